@@ -1,48 +1,102 @@
 package com.marco.controller;
 
+import com.marco.exception.ConversionCancelledException;
+import com.marco.exception.ConversionRejectedException;
 import com.marco.exception.ConvertException;
+import com.marco.exception.OutputTooLargeException;
+import com.marco.exception.ReadFileException;
+import com.marco.model.ConversionOptions;
+import com.marco.model.ImageInfo;
+import com.marco.service.ConversionScheduler;
 import com.marco.service.ImageService;
+import com.marco.util.CancellingOutputStream;
+import com.marco.util.ConversionControl;
+import com.marco.util.FormatIndex;
+import com.marco.worker.WorkerPool;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.io.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/v1/images")
 public class ImageController {
+    public static final String TIMEOUT_HEADER = "X-Conversion-Timeout";
+    // formato de salida sin parametro format, sin Accept o con Accept */* o image/*
+    public static final String DEFAULT_FORMAT = "png";
+
     private final ImageService imgService;
+    private final ConversionScheduler scheduler;
+    private final FormatIndex formatIndex;
+    private final WorkerPool workerPool;
+    private final Duration maxTimeout;
 
     @Autowired
-    public ImageController(ImageService imgService) {
+    public ImageController(ImageService imgService,
+                           ConversionScheduler scheduler,
+                           FormatIndex formatIndex,
+                           ObjectProvider<WorkerPool> workerPool,
+                           @Value("${converter.conversion.max-timeout:30s}") Duration maxTimeout) {
         this.imgService = imgService;
+        this.scheduler = scheduler;
+        this.formatIndex = formatIndex;
+        // solo existe con converter.worker.enabled=true
+        this.workerPool = workerPool.getIfAvailable();
+        this.maxTimeout = maxTimeout;
     }
 
     @PostMapping("/")
     public ResponseEntity<byte[]> convertImage(
             @RequestParam("file") MultipartFile file,
-            @RequestParam("format") String format) {
-        try {
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "maxBytes", required = false) Long maxBytes,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = TIMEOUT_HEADER, required = false) Long timeoutMillis) {
+        Target target = target(format, accept, maxBytes);
+        if (target.rejection() != null) {
+            return ResponseEntity.status(target.rejection()).build();
+        }
+        String targetFormat = target.format().name();
+        ConversionOptions options = new ConversionOptions(maxBytes, false);
+        try (ConversionControl control = ConversionControl.withTimeout(timeoutFor(timeoutMillis))) {
             // se lee el archivo recibido
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(file.getBytes());
+            byte[] imageData = file.getBytes();
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
-            // se convierte la img
-            imgService.convert(inputStream, outputStream, format);
-
-            // headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType("image/" + format));
-            headers.add("Content-Disposition", "attachment; filename=\"converted." + format + "\"");
+            // se convierte la img en el lane que corresponde a su tamaño
+            convert(imageData, outputStream, targetFormat, options, control);
 
             // se retorna la imagen convertida en el cuerpo de la respuesta
-            return new ResponseEntity<>(outputStream.toByteArray(), headers, HttpStatus.OK);
+            return new ResponseEntity<>(outputStream.toByteArray(), imageHeaders(target.format()), HttpStatus.OK);
+        } catch (ConversionCancelledException | ConversionRejectedException e) {
+            // se vencio el deadline de la conversion o el lane esta saturado
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (OutputTooLargeException e) {
+            // no entra en maxBytes ni con la menor calidad
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
         } catch (IOException | ConvertException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
 
@@ -50,6 +104,220 @@ public class ImageController {
 
 
     }
+    /**
+     * Conversión progresiva (JPEG progresivo, PNG/GIF entrelazados): la respuesta va chunked y los bytes
+     * se envían a medida que el writer los produce. Si el cliente se desconecta se aborta la conversión.
+     * <p>
+     * Antes de responder 200 se valida el header de la imagen y la conversión se admite en su lane y sale
+     * de la cola; solo un error durante la codificación corta la conexión, ya que el status está enviado.
+     * Si el request termina sin que Spring llame al body (cliente ido antes del commit, error del dispatch
+     * async), la conversión se cancela y libera su lugar en el lane.
+     */
+    @PostMapping(value = "/", params = "progressive=true")
+    public ResponseEntity<StreamingResponseBody> convertImageProgressive(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "maxBytes", required = false) Long maxBytes,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = TIMEOUT_HEADER, required = false) Long timeoutMillis,
+            NativeWebRequest webRequest) {
+        if (maxBytes != null) {
+            // con maxBytes se codifica entera en memoria para medirla: no hay nada que enviar progresivamente
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        Target target = target(format, accept, null);
+        if (target.rejection() != null) {
+            return ResponseEntity.status(target.rejection()).build();
+        }
+        String targetFormat = target.format().name();
+        byte[] imageData;
+        try {
+            imageData = file.getBytes();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        ConversionOptions options = new ConversionOptions(null, true);
+        ConversionControl control = ConversionControl.withTimeout(timeoutFor(timeoutMillis));
+        // el stream de la respuesta recien existe cuando Spring llama al body
+        BlockingQueue<OutputStream> responseStream = new ArrayBlockingQueue<>(1);
+        ConversionScheduler.Submission submission;
+        try {
+            imgService.validate(imageData, targetFormat);
+            submission = scheduler.submit(imageData, control, () -> convertInLane(imageData,
+                    awaitResponseStream(responseStream, control), targetFormat, options, control));
+            submission.awaitStart();
+        } catch (ReadFileException e) {
+            control.close();
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        } catch (ConversionCancelledException | ConversionRejectedException e) {
+            // se vencio el deadline en la cola del lane o el lane esta saturado
+            control.close();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (ConvertException e) {
+            control.close();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+
+        WebAsyncUtils.getAsyncManager(webRequest).registerCallableInterceptor(control,
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                        if (!submission.isDone()) {
+                            // el request terminó sin el body o antes de que termine: la conversión no espera más
+                            control.cancel(ConversionControl.Reason.ABORTED);
+                        }
+                        control.close();
+                    }
+                });
+        StreamingResponseBody body = outputStream -> {
+            try (control) {
+                // si la conversión ya se canceló recibió un stream vacío y await lo informa
+                responseStream.offer(new CancellingOutputStream(outputStream, control));
+                submission.await();
+            } catch (ConvertException e) {
+                throw new IOException("Error during image conversion: " + e.getMessage(), e);
+            }
+        };
+        return new ResponseEntity<>(body, imageHeaders(target.format()), HttpStatus.OK);
+    }
+
+    /**
+     * Conversión en el lane que corresponde al tamaño de la imagen, esperando a que termine.
+     */
+    private void convert(byte[] imageData, OutputStream outputStream, String format,
+                         ConversionOptions options, ConversionControl control) throws ConvertException {
+        scheduler.execute(imageData, control, () -> convertInLane(imageData, outputStream, format, options, control));
+    }
+
+    /**
+     * Conversión dentro del lane: en un proceso worker si el modo worker está activo, o en el proceso de la API.
+     */
+    private void convertInLane(byte[] imageData, OutputStream outputStream, String format,
+                               ConversionOptions options, ConversionControl control) throws ConvertException {
+        if (workerPool != null) {
+            workerPool.convert(imageData, outputStream, format, options, control);
+        } else {
+            imgService.convert(new ByteArrayInputStream(imageData), outputStream, format, options, control);
+        }
+    }
+
+    /**
+     * Stream de la respuesta progresiva, como mucho hasta el deadline. Si vence antes o la conversión se
+     * cancela mientras espera, recibe un stream vacío y corta en su primer checkpoint, donde se cuenta la
+     * cancelación.
+     */
+    private static OutputStream awaitResponseStream(BlockingQueue<OutputStream> responseStream,
+                                                    ConversionControl control) {
+        try (ConversionControl.Registration ignored =
+                     control.onCancel(() -> responseStream.offer(OutputStream.nullOutputStream()))) {
+            OutputStream outputStream = responseStream.poll(control.remainingNanos(), TimeUnit.NANOSECONDS);
+            if (outputStream != null) {
+                return outputStream;
+            }
+            control.cancel(ConversionControl.Reason.DEADLINE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            control.cancel(ConversionControl.Reason.ABORTED);
+        }
+        return OutputStream.nullOutputStream();
+    }
+
+    /**
+     * Formato de salida pedido, o el status con el que se rechaza el pedido antes de convertir.
+     */
+    private record Target(FormatIndex.Format format, HttpStatus rejection) {
+
+        static Target of(FormatIndex.Format format) {
+            return new Target(format, null);
+        }
+
+        static Target rejected(HttpStatus rejection) {
+            return new Target(null, rejection);
+        }
+    }
+
+    /**
+     * Valida {@code maxBytes} y resuelve el formato de salida: 400 si {@code maxBytes} no es positivo, si el
+     * header Accept no se puede parsear o si el {@code format} pedido no se puede escribir; 406 si ningun tipo
+     * del Accept se puede escribir.
+     */
+    private Target target(String format, String accept, Long maxBytes) {
+        if (maxBytes != null && maxBytes <= 0) {
+            return Target.rejected(HttpStatus.BAD_REQUEST);
+        }
+        Optional<FormatIndex.Format> target;
+        try {
+            target = outputFormat(format, accept);
+        } catch (InvalidMediaTypeException e) {
+            return Target.rejected(HttpStatus.BAD_REQUEST);
+        }
+        // formato pedido no soportado, o ningun tipo del Accept se puede escribir
+        return target.map(Target::of)
+                .orElseGet(() -> Target.rejected(format != null ? HttpStatus.BAD_REQUEST : HttpStatus.NOT_ACCEPTABLE));
+    }
+
+    /**
+     * Formato de salida: el parametro {@code format} si viene; si no, el tipo del header Accept con mayor
+     * calidad que se pueda escribir. Sin Accept o con un wildcard aceptado, {@link #DEFAULT_FORMAT}.
+     *
+     * @throws InvalidMediaTypeException si el header Accept no se puede parsear
+     */
+    private Optional<FormatIndex.Format> outputFormat(String format, String accept) {
+        if (format != null) {
+            return formatIndex.findWriteable(format);
+        }
+        if (accept == null || accept.isBlank()) {
+            return formatIndex.findWriteable(DEFAULT_FORMAT);
+        }
+        List<MediaType> mediaTypes = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        // orden estable: a igual calidad se respeta el orden del header
+        mediaTypes.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.getQualityValue() <= 0) {
+                continue;
+            }
+            if (mediaType.isWildcardType() || mediaType.isWildcardSubtype() && "image".equals(mediaType.getType())) {
+                return formatIndex.findWriteable(DEFAULT_FORMAT);
+            }
+            Optional<FormatIndex.Format> match =
+                    formatIndex.findWriteable(mediaType.getType() + "/" + mediaType.getSubtype());
+            if (match.isPresent()) {
+                return match;
+            }
+        }
+        return Optional.empty();
+    }
+
+    private HttpHeaders imageHeaders(FormatIndex.Format format) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(format.mimeType()));
+        headers.add("Content-Disposition", "attachment; filename=\"converted." + format.suffix() + "\"");
+        return headers;
+    }
+
+    /**
+     * Timeout pedido por el cliente (en ms), acotado por {@code converter.conversion.max-timeout}.
+     */
+    private Duration timeoutFor(Long timeoutMillis) {
+        if (timeoutMillis == null || timeoutMillis <= 0) {
+            return maxTimeout;
+        }
+        Duration requested = Duration.ofMillis(timeoutMillis);
+        return requested.compareTo(maxTimeout) < 0 ? requested : maxTimeout;
+    }
+
+    @PostMapping("/info")
+    public ResponseEntity<ImageInfo> getImageInfo(@RequestParam("file") MultipartFile file) {
+        // se lee solo el header, sin cargar el archivo entero en memoria
+        try (InputStream inputStream = file.getInputStream()) {
+            return ResponseEntity.status(HttpStatus.OK).body(imgService.getInfo(inputStream));
+        } catch (ReadFileException e) {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        } catch (IOException | ConvertException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GetMapping("/help")
     public ResponseEntity<Map<String, Set<String>>> getSupportedFormats() {
         Map<String, Set<String>> formats = new HashMap<>();
@@ -0,0 +1,296 @@
+package com.marco.worker;
+
+import com.marco.exception.ConversionCancelledException;
+import com.marco.exception.ConvertException;
+import com.marco.exception.OutputTooLargeException;
+import com.marco.model.ConversionOptions;
+import com.marco.util.ConversionControl;
+import com.marco.util.ConversionMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool de procesos JVM hijos ({@link WorkerMain}) que hacen las conversiones fuera del heap de la API.
+ * <p>
+ * Un worker se descarta después de {@code max-jobs} conversiones, cuando el heap que retiene después del GC
+ * supera {@code heap-high-water} de su {@code max-heap}, y se mata si la conversión vence o se cancela.
+ * Los workers se arrancan en segundo plano, al inicio y al descartar uno, para que un request no espere
+ * el arranque de una JVM.
+ */
+@Component
+@ConditionalOnProperty(name = "converter.worker.enabled", havingValue = "true")
+public class WorkerPool {
+
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final String BOOT_LAUNCHER = "org.springframework.boot.loader.launch.PropertiesLauncher";
+
+    private final ConversionMetrics metrics;
+    private final List<String> command;
+    private final int poolSize;
+    private final int maxJobs;
+    private final long heapHighWaterBytes;
+    private final BlockingQueue<WorkerProcess> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger live = new AtomicInteger();
+    private final ExecutorService starter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "worker-starter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed;
+
+    @Autowired
+    public WorkerPool(ConversionMetrics metrics,
+                      @Value("${converter.worker.pool-size:10}") int poolSize,
+                      @Value("${converter.worker.max-jobs:500}") int maxJobs,
+                      @Value("${converter.worker.max-heap:256MB}") DataSize maxHeap,
+                      @Value("${converter.worker.heap-high-water:0.75}") double heapHighWater,
+                      @Value("${converter.worker.java-command:}") String javaCommand,
+                      @Value("${converter.worker.classpath:}") String classpath,
+                      @Value("${converter.worker.jvm-options:-XX:+UseSerialGC}") String jvmOptions,
+                      @Value("${converter.quality-search.parallelism:4}") int qualitySearchParallelism,
+                      @Value("${converter.quality-search.queue-capacity:64}") int qualitySearchQueueCapacity) {
+        this.metrics = metrics;
+        this.poolSize = poolSize;
+        this.maxJobs = maxJobs;
+        this.heapHighWaterBytes = (long) (maxHeap.toBytes() * heapHighWater);
+        this.command = workerCommand(javaCommand, classpath, jvmOptions, maxHeap,
+                qualitySearchParallelism, qualitySearchQueueCapacity);
+    }
+
+    /**
+     * Convierte {@code imageData} en un worker; la salida se copia a {@code outputStream} a medida que llega.
+     *
+     * @throws ConversionCancelledException si vence el deadline o se cancela (el worker se mata)
+     * @throws OutputTooLargeException si no entra en {@code maxBytes} con ninguna calidad
+     */
+    public void convert(byte[] imageData, OutputStream outputStream, String targetFormat,
+                        ConversionOptions options, ConversionControl control) throws ConvertException {
+        WorkerProtocol.Request request = new WorkerProtocol.Request(targetFormat, options.maxBytes(),
+                options.progressive(), control.hasDeadline() ? remainingMillis(control) : -1, imageData);
+        WorkerProcess worker;
+        try {
+            worker = borrow(control);
+        } catch (ConversionCancelledException e) {
+            metrics.cancelled(control.getReason());
+            throw e;
+        }
+
+        boolean reusable = false;
+        try (ConversionControl.Registration ignored = control.onCancel(worker::kill)) {
+            WorkerProtocol.Result result = worker.convert(request, outputStream);
+            reusable = true;
+            switch (result.status()) {
+                case WorkerProtocol.STATUS_OK -> {
+                }
+                case WorkerProtocol.STATUS_TOO_LARGE -> throw new OutputTooLargeException(result.message());
+                case WorkerProtocol.STATUS_CANCELLED -> {
+                    // el worker llegó a su deadline antes que el de la API
+                    control.cancel(ConversionControl.Reason.DEADLINE);
+                    metrics.cancelled(ConversionControl.Reason.DEADLINE);
+                    throw new ConversionCancelledException(result.message());
+                }
+                default -> throw new ConvertException(result.message());
+            }
+        } catch (IOException e) {
+            // worker matado por cancelación, caído (ej. OOM) o cliente desconectado a mitad de la respuesta
+            if (control.isCancelled()) {
+                metrics.cancelled(control.getReason());
+                throw new ConversionCancelledException(
+                        "Conversion cancelled: " + control.getReason().name().toLowerCase(), e);
+            }
+            throw new ConvertException("Conversion worker failed: " + e.getMessage(), e);
+        } finally {
+            release(worker, reusable);
+        }
+    }
+
+    /**
+     * Arranca el pool completo en segundo plano.
+     */
+    @PostConstruct
+    public void prestart() {
+        for (int i = 0; i < poolSize; i++) {
+            prestartWorker();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        starter.shutdownNow();
+        try {
+            // un worker que se estaba arrancando queda en idle y se cierra con el resto
+            starter.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        WorkerProcess worker;
+        while ((worker = idle.poll()) != null) {
+            worker.shutdown();
+            live.decrementAndGet();
+        }
+    }
+
+    private WorkerProcess borrow(ConversionControl control) throws ConvertException {
+        try {
+            while (true) {
+                control.checkpoint();
+                WorkerProcess worker = idle.poll();
+                if (worker == null && reserveSlot()) {
+                    // solo si no hay ninguno arrancando en segundo plano (ej. falló el arranque)
+                    return start();
+                }
+                if (worker == null) {
+                    // se vuelve a intentar reservar: un worker descartado libera su lugar sin pasar por idle
+                    worker = idle.poll(Math.min(control.remainingNanos(), IDLE_WAIT_NANOS), TimeUnit.NANOSECONDS);
+                }
+                if (worker != null) {
+                    if (worker.isAlive()) {
+                        return worker;
+                    }
+                    retire(worker, "crashed");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            control.cancel(ConversionControl.Reason.ABORTED);
+            throw new ConversionCancelledException("Conversion cancelled: interrupted", e);
+        }
+    }
+
+    private boolean reserveSlot() {
+        int current;
+        do {
+            current = live.get();
+            if (current >= poolSize) {
+                return false;
+            }
+        } while (!live.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private WorkerProcess start() throws ConvertException {
+        try {
+            return new WorkerProcess(command);
+        } catch (IOException e) {
+            live.decrementAndGet();
+            throw new ConvertException("Unable to start conversion worker: " + e.getMessage(), e);
+        }
+    }
+
+    private void release(WorkerProcess worker, boolean reusable) {
+        String reason = !reusable ? "failed"
+                : !worker.isAlive() ? "crashed"
+                : worker.getJobs() >= maxJobs ? "max-jobs"
+                : worker.getUsedHeapBytes() > heapHighWaterBytes ? "heap"
+                : null;
+        if (reason != null) {
+            retire(worker, reason);
+        } else if (closed) {
+            worker.shutdown();
+            live.decrementAndGet();
+        } else {
+            idle.offer(worker);
+        }
+    }
+
+    private void retire(WorkerProcess worker, String reason) {
+        worker.kill();
+        live.decrementAndGet();
+        metrics.workerRecycled(reason);
+        prestartWorker();
+    }
+
+    /**
+     * Arranca un worker en el thread {@code worker-starter} y lo deja en idle, si hay lugar en el pool.
+     */
+    private void prestartWorker() {
+        if (closed) {
+            return;
+        }
+        try {
+            starter.execute(() -> {
+                if (closed || !reserveSlot()) {
+                    return;
+                }
+                WorkerProcess worker;
+                try {
+                    worker = new WorkerProcess(command);
+                } catch (IOException e) {
+                    // borrow lo vuelve a intentar en el thread del request, donde el error llega al cliente
+                    live.decrementAndGet();
+                    return;
+                }
+                if (closed) {
+                    worker.shutdown();
+                    live.decrementAndGet();
+                } else {
+                    idle.offer(worker);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // el pool se está cerrando
+        }
+    }
+
+    private static long remainingMillis(ConversionControl control) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(control.remainingNanos()));
+    }
+
+    /**
+     * Por defecto, el mismo java y classpath de la API. Si la API corre como jar ejecutable de Spring Boot,
+     * las clases están en BOOT-INF y el worker se lanza con el launcher del jar.
+     * <p>
+     * El worker no tiene contexto de Spring: la configuración de la búsqueda de calidad le llega como
+     * system properties.
+     */
+    static List<String> workerCommand(String javaCommand, String classpath, String jvmOptions, DataSize maxHeap,
+                                      int qualitySearchParallelism, int qualitySearchQueueCapacity) {
+        String java = javaCommand.isBlank()
+                ? Path.of(System.getProperty("java.home"), "bin", "java").toString()
+                : javaCommand;
+        String cp = classpath.isBlank() ? System.getProperty("java.class.path") : classpath;
+
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-Xmx" + maxHeap.toMegabytes() + "m");
+        command.add("-XX:+ExitOnOutOfMemoryError");
+        command.add("-Djava.awt.headless=true");
+        command.add("-D" + WorkerMain.QUALITY_SEARCH_PARALLELISM + "=" + qualitySearchParallelism);
+        command.add("-D" + WorkerMain.QUALITY_SEARCH_QUEUE_CAPACITY + "=" + qualitySearchQueueCapacity);
+        if (!jvmOptions.isBlank()) {
+            command.addAll(Arrays.asList(jvmOptions.trim().split("\\s+")));
+        }
+        if (cp.endsWith(".jar") && !cp.contains(File.pathSeparator)) {
+            command.add("-Dloader.main=" + WorkerMain.class.getName());
+            command.add("-cp");
+            command.add(cp);
+            command.add(BOOT_LAUNCHER);
+        } else {
+            command.add("-cp");
+            command.add(cp);
+            command.add(WorkerMain.class.getName());
+        }
+        return command;
+    }
+}
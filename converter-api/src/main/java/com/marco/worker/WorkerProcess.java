@@ -0,0 +1,76 @@
+package com.marco.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Un proceso {@link WorkerMain} hijo, usado por un solo thread a la vez.
+ */
+class WorkerProcess {
+
+    private final Process process;
+    private final DataOutputStream requests;
+    private final DataInputStream responses;
+    private int jobs;
+    private long usedHeapBytes;
+
+    WorkerProcess(List<String> command) throws IOException {
+        this.process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+    }
+
+    /**
+     * Envía la conversión y copia la salida a {@code target} a medida que llega.
+     *
+     * @throws IOException si el worker murió (o fue matado) o si falla la escritura en {@code target}
+     */
+    WorkerProtocol.Result convert(WorkerProtocol.Request request, OutputStream target) throws IOException {
+        jobs++;
+        WorkerProtocol.writeRequest(requests, request);
+        WorkerProtocol.Result result = WorkerProtocol.readResponse(responses, target);
+        usedHeapBytes = result.usedHeapBytes();
+        return result;
+    }
+
+    int getJobs() {
+        return jobs;
+    }
+
+    long getUsedHeapBytes() {
+        return usedHeapBytes;
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    void kill() {
+        process.destroyForcibly();
+    }
+
+    /**
+     * Cierra stdin para que el worker termine solo; si no lo hace a tiempo, se lo mata.
+     */
+    void shutdown() {
+        try {
+            requests.close();
+            if (!process.waitFor(1, TimeUnit.SECONDS)) {
+                kill();
+            }
+        } catch (IOException e) {
+            kill();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            kill();
+        }
+    }
+}
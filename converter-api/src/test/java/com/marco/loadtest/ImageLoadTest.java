@@ -0,0 +1,217 @@
+package com.marco.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.marco.ConvertFileApiApplication;
+import com.marco.loadtest.LoadTestReport.JvmSnapshot;
+import com.marco.loadtest.LoadTestReport.Sample;
+import com.marco.loadtest.LoadTestSettings.FormatPair;
+import com.marco.loadtest.LoadTestSettings.Size;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test HTTP de punta a punta sobre {@code /api/v1/images/}.
+ * <p>
+ * Levanta la aplicacion en un puerto aleatorio y la ejercita con la concurrencia y la mezcla de
+ * formatos/tamaños de {@link LoadTestSettings}. Solo se ejecuta con el perfil {@code load-test}:
+ * <pre>
+ * mvn -pl converter-api -am test -Pload-test
+ * </pre>
+ * El reporte JSON queda en {@code target/loadtest-report.json}. Cliente y servidor comparten la JVM,
+ * por lo que las estadisticas de heap/GC incluyen a ambos.
+ */
+@Tag("load")
+@SpringBootTest(classes = ConvertFileApiApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class ImageLoadTest {
+
+    @LocalServerPort
+    private int port;
+
+    private final LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+    private final Map<String, byte[]> payloads = new ConcurrentHashMap<>();
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    @Test
+    void convertEndpoint_underConfiguredLoad_staysWithinThresholds() throws Exception {
+        // se generan las imagenes antes de medir
+        for (var format : settings.formats()) {
+            for (var size : settings.sizes()) {
+                payload(format.value().source(), size.value());
+            }
+        }
+
+        runPhase(settings.warmupSeconds(), null);
+
+        System.gc();
+        JvmSnapshot.resetPeaks();
+        JvmSnapshot before = JvmSnapshot.take();
+        ConcurrentLinkedQueue<Sample> samples = new ConcurrentLinkedQueue<>();
+        long start = System.nanoTime();
+        runPhase(settings.durationSeconds(), samples);
+        long elapsed = System.nanoTime() - start;
+
+        LoadTestReport report = LoadTestReport.build(describeSettings(), new ArrayList<>(samples), elapsed, before);
+        writeReport(report);
+
+        assertTrue(report.requests() > 0, "The load test must complete at least one request.");
+        assertTrue(report.errorRate() <= settings.maxErrorRate(),
+                "Error rate " + report.errorRate() + " exceeds " + settings.maxErrorRate());
+        if (settings.maxP99Millis() > 0) {
+            assertTrue(report.latencyMillis().p99() <= settings.maxP99Millis(),
+                    "p99 " + report.latencyMillis().p99() + "ms exceeds " + settings.maxP99Millis() + "ms");
+        }
+    }
+
+    /**
+     * Ejecuta {@code concurrency} clientes en loop cerrado durante {@code seconds}.
+     * Si {@code samples} es null la fase es de warmup y no se registra nada.
+     */
+    private void runPhase(int seconds, ConcurrentLinkedQueue<Sample> samples) throws Exception {
+        if (seconds <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        ExecutorService clients = Executors.newFixedThreadPool(settings.concurrency());
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < settings.concurrency(); i++) {
+                running.add(clients.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        Sample sample = sendOne();
+                        if (samples != null) {
+                            samples.add(sample);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private Sample sendOne() {
+        FormatPair format = LoadTestSettings.pick(settings.formats());
+        Size size = LoadTestSettings.pick(settings.sizes());
+        String scenario = format + "@" + size;
+
+        String boundary = "----loadtest" + UUID.randomUUID();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/images/"))
+                .timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(
+                        multipartBody(boundary, payload(format.source(), size), format)))
+                .build();
+
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = 0;
+        }
+        return new Sample(scenario, System.nanoTime() - start, status);
+    }
+
+    private byte[] multipartBody(String boundary, byte[] image, FormatPair format) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(image.length + 512);
+        String fileHeader = "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"input." + format.source() + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n";
+        String formatPart = "\r\n--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"format\"\r\n\r\n"
+                + format.target()
+                + "\r\n--" + boundary + "--\r\n";
+        body.writeBytes(fileHeader.getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(image);
+        body.writeBytes(formatPart.getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+
+    private byte[] payload(String sourceFormat, Size size) {
+        return payloads.computeIfAbsent(sourceFormat + "@" + size, key -> {
+            // degradado + ruido leve: comprime como una foto real, no como un color plano
+            BufferedImage image = new BufferedImage(size.width(), size.height(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setPaint(new GradientPaint(0, 0, Color.ORANGE, size.width(), size.height(), Color.BLUE));
+            g.fillRect(0, 0, size.width(), size.height());
+            g.dispose();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < size.width() * size.height() / 50; i++) {
+                image.setRGB(random.nextInt(size.width()), random.nextInt(size.height()), random.nextInt());
+            }
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                if (!ImageIO.write(image, sourceFormat, out)) {
+                    throw new IllegalArgumentException("No writer for source format: " + sourceFormat);
+                }
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private Map<String, Object> describeSettings() {
+        Map<String, Object> described = new LinkedHashMap<>();
+        described.put("concurrency", settings.concurrency());
+        described.put("warmupSeconds", settings.warmupSeconds());
+        described.put("durationSeconds", settings.durationSeconds());
+        described.put("formats", settings.formats().stream().map(w -> w.value() + ":" + w.weight()).toList());
+        described.put("sizes", settings.sizes().stream().map(w -> w.value() + ":" + w.weight()).toList());
+        described.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        described.put("javaVersion", System.getProperty("java.version"));
+        return described;
+    }
+
+    private void writeReport(LoadTestReport report) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        if (settings.reportPath().getParent() != null) {
+            Files.createDirectories(settings.reportPath().getParent());
+        }
+        mapper.writeValue(settings.reportPath().toFile(), report);
+        System.out.println("**LOAD TEST** report: " + settings.reportPath().toAbsolutePath());
+        System.out.println(mapper.writeValueAsString(report.latencyMillis()));
+    }
+}
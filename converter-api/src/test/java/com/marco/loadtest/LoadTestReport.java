@@ -0,0 +1,141 @@
+package com.marco.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Resultado de una corrida del load test, serializado como JSON.
+ */
+record LoadTestReport(
+        Map<String, Object> settings,
+        long requests,
+        double durationSeconds,
+        double throughputPerSecond,
+        double errorRate,
+        Map<String, Long> statusCounts,
+        Latency latencyMillis,
+        Map<String, Scenario> scenarios,
+        Heap heap,
+        Map<String, Gc> gc) {
+
+    record Latency(double p50, double p95, double p99, double max, double mean) {
+
+        static Latency of(long[] sortedNanos) {
+            if (sortedNanos.length == 0) {
+                return new Latency(0, 0, 0, 0, 0);
+            }
+            return new Latency(
+                    millis(percentile(sortedNanos, 50)),
+                    millis(percentile(sortedNanos, 95)),
+                    millis(percentile(sortedNanos, 99)),
+                    millis(sortedNanos[sortedNanos.length - 1]),
+                    millis((long) Arrays.stream(sortedNanos).average().orElse(0)));
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            // nearest-rank
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+        }
+
+        private static double millis(long nanos) {
+            return Math.round(nanos / 1_000.0) / 1_000.0;
+        }
+    }
+
+    record Scenario(long requests, long errors, Latency latencyMillis) {
+    }
+
+    record Heap(long usedBeforeBytes, long usedAfterBytes, long peakUsedBytes, long maxBytes) {
+    }
+
+    record Gc(long collections, long timeMillis) {
+    }
+
+    /**
+     * Una muestra por request medido (no incluye el warmup).
+     */
+    record Sample(String scenario, long latencyNanos, int status) {
+
+        boolean isError() {
+            return status < 200 || status >= 300;
+        }
+    }
+
+    /**
+     * Foto del heap y de los colectores tomada antes de la fase medida.
+     */
+    record JvmSnapshot(long heapUsed, Map<String, Gc> gc) {
+
+        static JvmSnapshot take() {
+            Map<String, Gc> gc = new LinkedHashMap<>();
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gc.put(bean.getName(), new Gc(bean.getCollectionCount(), bean.getCollectionTime()));
+            }
+            return new JvmSnapshot(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), gc);
+        }
+
+        static void resetPeaks() {
+            ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+        }
+    }
+
+    static LoadTestReport build(Map<String, Object> settings, List<Sample> samples, long elapsedNanos,
+                                JvmSnapshot before) {
+        JvmSnapshot after = JvmSnapshot.take();
+
+        long[] latencies = samples.stream().mapToLong(Sample::latencyNanos).sorted().toArray();
+        long errors = samples.stream().filter(Sample::isError).count();
+
+        Map<String, Long> statusCounts = new TreeMap<>();
+        for (Sample sample : samples) {
+            // status 0 = error de transporte (timeout, conexion cerrada)
+            statusCounts.merge(String.valueOf(sample.status()), 1L, Long::sum);
+        }
+
+        Map<String, Scenario> scenarios = new TreeMap<>();
+        samples.stream()
+                .map(Sample::scenario)
+                .distinct()
+                .forEach(name -> {
+                    List<Sample> group = samples.stream().filter(s -> s.scenario().equals(name)).toList();
+                    scenarios.put(name, new Scenario(
+                            group.size(),
+                            group.stream().filter(Sample::isError).count(),
+                            Latency.of(group.stream().mapToLong(Sample::latencyNanos).sorted().toArray())));
+                });
+
+        long peakHeap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+        Heap heap = new Heap(before.heapUsed(), after.heapUsed(), peakHeap,
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax());
+
+        Map<String, Gc> gc = new LinkedHashMap<>();
+        after.gc().forEach((name, total) -> {
+            Gc start = before.gc().getOrDefault(name, new Gc(0, 0));
+            gc.put(name, new Gc(total.collections() - start.collections(), total.timeMillis() - start.timeMillis()));
+        });
+
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        return new LoadTestReport(
+                settings,
+                samples.size(),
+                seconds,
+                seconds > 0 ? samples.size() / seconds : 0,
+                samples.isEmpty() ? 0 : (double) errors / samples.size(),
+                statusCounts,
+                Latency.of(latencies),
+                scenarios,
+                heap,
+                gc);
+    }
+}
@@ -0,0 +1,106 @@
+package com.marco.loadtest;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Configuracion del load test, leida de system properties con prefijo {@code loadtest.}.
+ *
+ * <pre>
+ * mvn -pl converter-api -am test -Pload-test \
+ *     -Dloadtest.concurrency=16 -Dloadtest.durationSeconds=60 \
+ *     -Dloadtest.formats=png&gt;jpeg:4,jpeg&gt;png:1 \
+ *     -Dloadtest.sizes=320x240:6,1920x1080:3,4000x3000:1
+ * </pre>
+ */
+record LoadTestSettings(
+        int concurrency,
+        int warmupSeconds,
+        int durationSeconds,
+        List<Weighted<FormatPair>> formats,
+        List<Weighted<Size>> sizes,
+        Path reportPath,
+        double maxErrorRate,
+        long maxP99Millis) {
+
+    record FormatPair(String source, String target) {
+        @Override
+        public String toString() {
+            return source + ">" + target;
+        }
+    }
+
+    record Size(int width, int height) {
+        @Override
+        public String toString() {
+            return width + "x" + height;
+        }
+    }
+
+    record Weighted<T>(T value, int weight) {
+    }
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                Integer.getInteger("loadtest.concurrency", 8),
+                Integer.getInteger("loadtest.warmupSeconds", 5),
+                Integer.getInteger("loadtest.durationSeconds", 30),
+                parseWeighted(System.getProperty("loadtest.formats", "png>jpeg:4,jpeg>png:2,png>gif:1"),
+                        LoadTestSettings::parseFormatPair),
+                parseWeighted(System.getProperty("loadtest.sizes", "320x240:6,1920x1080:3,4000x3000:1"),
+                        LoadTestSettings::parseSize),
+                Path.of(System.getProperty("loadtest.report", "target/loadtest-report.json")),
+                Double.parseDouble(System.getProperty("loadtest.maxErrorRate", "0.01")),
+                // 0 desactiva el umbral de p99
+                Long.getLong("loadtest.maxP99Millis", 0L));
+    }
+
+    /**
+     * Elige un valor al azar respetando los pesos configurados.
+     */
+    static <T> T pick(List<Weighted<T>> values) {
+        int total = values.stream().mapToInt(Weighted::weight).sum();
+        int roll = ThreadLocalRandom.current().nextInt(total);
+        for (Weighted<T> value : values) {
+            roll -= value.weight();
+            if (roll < 0) {
+                return value.value();
+            }
+        }
+        return values.get(values.size() - 1).value();
+    }
+
+    private static <T> List<Weighted<T>> parseWeighted(String spec, Function<String, T> parser) {
+        List<Weighted<T>> result = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split(":");
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            if (weight > 0) {
+                result.add(new Weighted<>(parser.apply(parts[0].trim()), weight));
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("Empty load test mix: " + spec);
+        }
+        return List.copyOf(result);
+    }
+
+    private static FormatPair parseFormatPair(String value) {
+        String[] parts = value.split(">");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Expected source>target, got: " + value);
+        }
+        return new FormatPair(parts[0].trim().toLowerCase(), parts[1].trim().toLowerCase());
+    }
+
+    private static Size parseSize(String value) {
+        String[] parts = value.toLowerCase().split("x");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Expected WIDTHxHEIGHT, got: " + value);
+        }
+        return new Size(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    }
+}
@@ -0,0 +1,193 @@
+package com.marco.worker;
+
+import com.marco.exception.ConversionCancelledException;
+import com.marco.model.ConversionOptions;
+import com.marco.util.CancellingOutputStream;
+import com.marco.util.ConversionControl;
+import com.marco.util.ConversionMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pool de un solo worker {@link WorkerMain}, arrancado desde el classpath de test: si un lugar del pool
+ * quedara ocupado, la siguiente conversión no conseguiría worker.
+ */
+public class WorkerPoolTest {
+
+    private static final Duration CONVERSION_TIMEOUT = Duration.ofSeconds(30);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private WorkerPool pool;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        waitUntil(() -> workerPids().isEmpty());
+    }
+
+    @Test
+    void convert_afterMaxJobs_replacesWorker() throws Exception {
+        pool = newPool(2);
+        pool.prestart();
+        waitUntil(() -> workerPids().size() == 1);
+        Set<Long> first = workerPids();
+
+        assertConverts(pool);
+        assertConverts(pool);
+
+        assertEquals(1.0, recycled("max-jobs"));
+        // el reemplazo se arranca en segundo plano, sin esperar a la siguiente conversion
+        waitUntil(() -> workerPids().size() == 1 && !workerPids().equals(first));
+        assertEquals(1, workerPids().size());
+        assertFalse(workerPids().containsAll(first), "The recycled worker must be a new process.");
+        assertConverts(pool);
+    }
+
+    @Test
+    void convert_deadline_killsWorkerAndFreesItsSlot() throws Exception {
+        pool = newPool(100);
+        pool.prestart();
+        waitUntil(() -> workerPids().size() == 1);
+        // la salida no entra en el pipe: el worker queda bloqueado mientras la API no la lee
+        byte[] noise = png(noisyImage(512, 512));
+
+        try (ConversionControl control = ConversionControl.withTimeout(Duration.ofMillis(500))) {
+            OutputStream slowClient = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    try {
+                        waitUntil(control::isCancelled);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+            };
+
+            ConversionCancelledException thrown = assertThrows(ConversionCancelledException.class,
+                    () -> pool.convert(noise, slowClient, "bmp", ConversionOptions.defaults(), control));
+
+            assertEquals("Conversion cancelled: deadline", thrown.getMessage());
+        }
+
+        assertEquals(1.0, recycled("failed"));
+        assertConverts(pool);
+        assertEquals(1, workerPids().size());
+    }
+
+    @Test
+    void convert_clientDisconnects_killsWorkerAndFreesItsSlot() throws Exception {
+        pool = newPool(100);
+        pool.prestart();
+        waitUntil(() -> workerPids().size() == 1);
+
+        try (ConversionControl control = ConversionControl.withTimeout(CONVERSION_TIMEOUT)) {
+            OutputStream gone = new CancellingOutputStream(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("Broken pipe");
+                }
+            }, control);
+
+            assertThrows(ConversionCancelledException.class,
+                    () -> pool.convert(png(noisyImage(64, 64)), gone, "jpeg", ConversionOptions.defaults(), control));
+
+            assertEquals(ConversionControl.Reason.DISCONNECT, control.getReason());
+        }
+
+        assertEquals(1.0, recycled("failed"));
+        assertConverts(pool);
+        assertEquals(1, workerPids().size());
+    }
+
+    @Test
+    void convert_crashedIdleWorker_isReplaced() throws Exception {
+        pool = newPool(100);
+        pool.prestart();
+        waitUntil(() -> workerPids().size() == 1);
+
+        // el worker muere estando en idle (ej. matado por el sistema)
+        ProcessHandle.current().children().forEach(ProcessHandle::destroyForcibly);
+        waitUntil(() -> workerPids().isEmpty());
+
+        assertConverts(pool);
+
+        assertEquals(1.0, recycled("crashed"));
+        assertEquals(1, workerPids().size());
+    }
+
+    private WorkerPool newPool(int maxJobs) {
+        // surefire puede lanzar los tests con un jar de manifest: el classpath real esta en su property
+        String classpath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        return new WorkerPool(new ConversionMetrics(registry), 1, maxJobs, DataSize.ofMegabytes(128), 0.75,
+                "", classpath, "-XX:+UseSerialGC -XX:TieredStopAtLevel=1", 1, 16);
+    }
+
+    private static void assertConverts(WorkerPool pool) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ConversionControl control = ConversionControl.withTimeout(CONVERSION_TIMEOUT)) {
+            pool.convert(png(noisyImage(64, 48)), output, "jpeg", ConversionOptions.defaults(), control);
+        }
+        BufferedImage converted = ImageIO.read(new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(64, converted.getWidth());
+        assertEquals(48, converted.getHeight());
+    }
+
+    private double recycled(String reason) {
+        return registry.counter("converter.worker.recycled", "reason", reason).count();
+    }
+
+    private static Set<Long> workerPids() {
+        return ProcessHandle.current().children()
+                .filter(ProcessHandle::isAlive)
+                .map(ProcessHandle::pid)
+                .collect(Collectors.toSet());
+    }
+
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    private static BufferedImage noisyImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
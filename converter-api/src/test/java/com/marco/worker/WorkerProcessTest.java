@@ -0,0 +1,83 @@
+package com.marco.worker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkerProcessTest {
+
+    private static final long TIMEOUT_MILLIS = 30_000;
+
+    private final WorkerProcess worker = new WorkerProcess(WorkerPool.workerCommand("",
+            System.getProperty("surefire.test.class.path", System.getProperty("java.class.path")),
+            "-XX:+UseSerialGC -XX:TieredStopAtLevel=1", DataSize.ofMegabytes(128), 1, 16));
+
+    public WorkerProcessTest() throws IOException {
+    }
+
+    @AfterEach
+    void tearDown() {
+        worker.kill();
+    }
+
+    @Test
+    void convert_reusesTheSameProcessAndReportsHeap() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            WorkerProtocol.Result result = worker.convert(request("jpeg", png(new BufferedImage(32, 16,
+                    BufferedImage.TYPE_INT_RGB))), output);
+
+            assertEquals(WorkerProtocol.STATUS_OK, result.status());
+            BufferedImage converted = ImageIO.read(new ByteArrayInputStream(output.toByteArray()));
+            assertEquals(32, converted.getWidth());
+        }
+
+        assertEquals(2, worker.getJobs());
+        assertTrue(worker.getUsedHeapBytes() >= 0);
+        assertTrue(worker.isAlive());
+    }
+
+    @Test
+    void convert_invalidImage_returnsErrorAndKeepsWorkerAlive() throws IOException {
+        WorkerProtocol.Result result = worker.convert(request("png", "not an image".getBytes()),
+                OutputStream.nullOutputStream());
+
+        assertEquals(WorkerProtocol.STATUS_ERROR, result.status());
+        assertTrue(worker.isAlive());
+    }
+
+    @Test
+    void convert_afterKill_throwsIOException() {
+        worker.kill();
+
+        assertThrows(IOException.class, () -> worker.convert(request("png", png(new BufferedImage(8, 8,
+                BufferedImage.TYPE_INT_RGB))), OutputStream.nullOutputStream()));
+    }
+
+    @Test
+    void shutdown_closingStdinEndsTheWorker() {
+        worker.shutdown();
+
+        assertFalse(worker.isAlive());
+    }
+
+    private static WorkerProtocol.Request request(String targetFormat, byte[] imageData) {
+        return new WorkerProtocol.Request(targetFormat, null, false, TIMEOUT_MILLIS, imageData);
+    }
+
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,15 @@
+package com.marco.exception;
+
+/**
+ * Se lanza cuando una conversión se aborta antes de terminar (deadline vencido o cliente desconectado).
+ */
+public class ConversionCancelledException extends ConvertException {
+
+    public ConversionCancelledException(String message) {
+        super(message);
+    }
+
+    public ConversionCancelledException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,15 @@
+package com.marco.exception;
+
+/**
+ * Se lanza cuando no hay capacidad para aceptar una conversión (cola llena).
+ */
+public class ConversionRejectedException extends ConvertException {
+
+    public ConversionRejectedException(String message) {
+        super(message);
+    }
+
+    public ConversionRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
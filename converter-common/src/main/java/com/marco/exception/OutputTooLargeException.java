@@ -0,0 +1,15 @@
+package com.marco.exception;
+
+/**
+ * Se lanza cuando la imagen no entra en el tamaño máximo pedido con ninguna calidad de compresión.
+ */
+public class OutputTooLargeException extends WriteFileException {
+
+    public OutputTooLargeException(String message) {
+        super(message);
+    }
+
+    public OutputTooLargeException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
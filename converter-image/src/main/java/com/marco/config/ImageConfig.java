@@ -0,0 +1,34 @@
+package com.marco.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class ImageConfig {
+
+    /**
+     * Pool para los encodes candidatos de la búsqueda de calidad ({@code maxBytes}).
+     * Si la cola se llena, el thread de la conversión codifica el candidato él mismo.
+     */
+    @Bean
+    public ExecutorService qualitySearchExecutor(
+            @Value("${converter.quality-search.parallelism:4}") int parallelism,
+            @Value("${converter.quality-search.queue-capacity:64}") int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "quality-search-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
@@ -0,0 +1,15 @@
+package com.marco.model;
+
+/**
+ * Opciones de una conversión.
+ *
+ * @param maxBytes    tamaño máximo de la salida; null para escribir con la calidad por defecto del writer
+ * @param progressive JPEG progresivo / PNG y GIF entrelazados cuando el writer lo soporta,
+ *                    enviando los bytes a medida que se codifican
+ */
+public record ConversionOptions(Long maxBytes, boolean progressive) {
+
+    public static ConversionOptions defaults() {
+        return new ConversionOptions(null, false);
+    }
+}
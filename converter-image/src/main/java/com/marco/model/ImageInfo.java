@@ -0,0 +1,24 @@
+package com.marco.model;
+
+import java.util.List;
+
+/**
+ * Datos de una imagen obtenidos solo de su header/metadata, sin decodificar píxeles.
+ *
+ * @param frameCount cantidad de frames, o -1 si para saberlo habría que recorrer todo el archivo (ej: GIF)
+ * @param colorModel tipo de color: rgb, gray, cmyk, ycbcr, indexed u other; null si no está en el header
+ *                   (ej: PNG con paleta, cuyo reader recorre todo el archivo para saberlo)
+ * @param bitsPerPixel bits por píxel, o -1 si el tipo de color es desconocido
+ * @param metadataFormats formatos de metadata que declara el reader, sin parsear la metadata
+ */
+public record ImageInfo(
+        String format,
+        String mimeType,
+        int width,
+        int height,
+        int frameCount,
+        String colorModel,
+        int bitsPerPixel,
+        boolean hasAlpha,
+        List<String> metadataFormats) {
+}
@@ -0,0 +1,230 @@
+package com.marco.service;
+
+import com.marco.exception.ConversionCancelledException;
+import com.marco.exception.ConversionRejectedException;
+import com.marco.exception.ConvertException;
+import com.marco.util.ConversionControl;
+import com.marco.util.ConversionMetrics;
+import com.marco.util.ImageUtil;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reparte las conversiones en dos lanes según la cantidad de píxeles leída del header,
+ * cada una con su propio executor acotado, para que las imágenes grandes no demoren a las chicas.
+ */
+@Service
+public class ConversionScheduler {
+
+    public enum Lane {
+        SMALL,
+        LARGE;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Conversión a ejecutar dentro de un lane.
+     */
+    @FunctionalInterface
+    public interface ConversionTask {
+        void run() throws ConvertException;
+    }
+
+    /**
+     * Conversión admitida en un lane, en cola o corriendo.
+     */
+    public static final class Submission {
+        private final Future<Void> future;
+        private final CountDownLatch started;
+        private final ConversionControl control;
+        private final ThreadPoolExecutor lane;
+        private final ConversionMetrics metrics;
+
+        private Submission(Future<Void> future, CountDownLatch started, ConversionControl control,
+                           ThreadPoolExecutor lane, ConversionMetrics metrics) {
+            this.future = future;
+            this.started = started;
+            this.control = control;
+            this.lane = lane;
+            this.metrics = metrics;
+        }
+
+        /**
+         * @return true si la tarea terminó, bien o con error
+         */
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        /**
+         * Espera a que la tarea salga de la cola del lane, como mucho hasta el deadline.
+         *
+         * @throws ConversionCancelledException si vence el deadline mientras sigue en cola
+         */
+        public void awaitStart() throws ConversionCancelledException {
+            try {
+                if (!started.await(control.remainingNanos(), TimeUnit.NANOSECONDS)) {
+                    abandon(ConversionControl.Reason.DEADLINE);
+                    throw new ConversionCancelledException("Conversion cancelled: deadline");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandon(ConversionControl.Reason.ABORTED);
+                throw new ConversionCancelledException("Conversion cancelled: interrupted", e);
+            }
+        }
+
+        /**
+         * Espera a que la tarea termine, como mucho hasta el deadline.
+         *
+         * @throws ConversionCancelledException si vence el deadline (incluida la espera en cola)
+         */
+        public void await() throws ConvertException {
+            try {
+                if (control.hasDeadline()) {
+                    future.get(control.remainingNanos(), TimeUnit.NANOSECONDS);
+                } else {
+                    future.get();
+                }
+            } catch (TimeoutException e) {
+                abandon(ConversionControl.Reason.DEADLINE);
+                throw new ConversionCancelledException("Conversion cancelled: deadline", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ConvertException convertException) {
+                    throw convertException;
+                }
+                if (cause instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw new ConvertException("Error during image conversion", cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandon(ConversionControl.Reason.ABORTED);
+                throw new ConversionCancelledException("Conversion cancelled: interrupted", e);
+            }
+        }
+
+        /**
+         * Cancela la conversión que ya no se espera. Si sigue en la cola del lane se saca, para que no ocupe
+         * el lugar de una conversión viva, y la cancelación se cuenta acá; si ya está corriendo, corta en su
+         * próximo checkpoint y se cuenta ahí.
+         */
+        private void abandon(ConversionControl.Reason reason) {
+            control.cancel(reason);
+            // submit encola el mismo FutureTask que devuelve
+            if (lane.remove((Runnable) future)) {
+                future.cancel(false);
+                metrics.cancelled(reason);
+            }
+        }
+    }
+
+    private final ImageUtil imageUtils;
+    private final ConversionMetrics metrics;
+    private final long largeThresholdPixels;
+    private final Map<Lane, ThreadPoolExecutor> lanes = new EnumMap<>(Lane.class);
+
+    @Autowired
+    public ConversionScheduler(ImageUtil imageUtils,
+                               ConversionMetrics metrics,
+                               @Value("${converter.lanes.large-threshold-pixels:4000000}") long largeThresholdPixels,
+                               @Value("${converter.lanes.small.concurrency:8}") int smallConcurrency,
+                               @Value("${converter.lanes.small.queue-capacity:200}") int smallQueueCapacity,
+                               @Value("${converter.lanes.large.concurrency:2}") int largeConcurrency,
+                               @Value("${converter.lanes.large.queue-capacity:20}") int largeQueueCapacity) {
+        this.imageUtils = imageUtils;
+        this.metrics = metrics;
+        this.largeThresholdPixels = largeThresholdPixels;
+        this.lanes.put(Lane.SMALL, newLane(Lane.SMALL, smallConcurrency, smallQueueCapacity));
+        this.lanes.put(Lane.LARGE, newLane(Lane.LARGE, largeConcurrency, largeQueueCapacity));
+        this.lanes.forEach((lane, executor) -> metrics.monitorLane(lane.tag(), executor));
+    }
+
+    /**
+     * Ejecuta {@code task} en el lane que corresponde a {@code imageData} y espera a que termine,
+     * como mucho hasta el deadline de {@code control}.
+     *
+     * @throws ConversionRejectedException si la cola del lane está llena
+     * @throws ConversionCancelledException si vence el deadline (incluida la espera en cola)
+     */
+    public void execute(byte[] imageData, ConversionControl control, ConversionTask task) throws ConvertException {
+        submit(imageData, control, task).await();
+    }
+
+    /**
+     * Encola {@code task} en el lane que corresponde a {@code imageData} sin esperar a que termine,
+     * para rechazar la conversión antes de empezar a responder.
+     *
+     * @throws ConversionRejectedException si la cola del lane está llena
+     */
+    public Submission submit(byte[] imageData, ConversionControl control, ConversionTask task)
+            throws ConversionRejectedException {
+        Lane lane = classify(imageData);
+        long enqueuedAt = System.nanoTime();
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            Future<Void> future = lanes.get(lane).submit(() -> {
+                started.countDown();
+                metrics.queueWait(lane.tag(), System.nanoTime() - enqueuedAt);
+                task.run();
+                return null;
+            });
+            return new Submission(future, started, control, lanes.get(lane), metrics);
+        } catch (RejectedExecutionException e) {
+            metrics.rejected(lane.tag());
+            throw new ConversionRejectedException("Too many pending conversions in the " + lane.tag() + " lane", e);
+        }
+    }
+
+    public Lane classify(byte[] imageData) {
+        try {
+            Dimension dimension = imageUtils.getImageDimensions(new ByteArrayInputStream(imageData));
+            long pixels = (long) dimension.width * dimension.height;
+            return pixels >= largeThresholdPixels ? Lane.LARGE : Lane.SMALL;
+        } catch (IOException e) {
+            // un header ilegible falla rápido en la validación, no ocupa el lane grande
+            return Lane.SMALL;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lanes.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+
+    private static ThreadPoolExecutor newLane(Lane lane, int concurrency, int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "lane-" + lane.tag() + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
@@ -1,31 +1,70 @@
 package com.marco.service;
 
+import com.marco.exception.ConversionCancelledException;
 import com.marco.exception.ConvertException;
+import com.marco.exception.OutputTooLargeException;
+import com.marco.exception.ReadFileException;
+import com.marco.exception.WriteFileException;
 import com.marco.interfaces.ConvertService;
+import com.marco.model.ConversionOptions;
+import com.marco.model.ImageInfo;
+import com.marco.util.ConversionControl;
+import com.marco.util.ConversionMetrics;
 import com.marco.util.ImageUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
 
 @Service
 public class ImageService implements ConvertService {
 
     private final ImageUtil imageUtils;
+    private final ConversionMetrics metrics;
+    private final ExecutorService qualitySearchExecutor;
 
     @Autowired
-    public ImageService(ImageUtil imageUtils) {
+    public ImageService(ImageUtil imageUtils, ConversionMetrics metrics,
+                        @Qualifier("qualitySearchExecutor") ExecutorService qualitySearchExecutor) {
         this.imageUtils = imageUtils;
+        this.metrics = metrics;
+        this.qualitySearchExecutor = qualitySearchExecutor;
     }
 
     @Override
     public void convert(InputStream inputStream, OutputStream outputStream, String targetFormat)
             throws ConvertException {
+        convert(inputStream, outputStream, targetFormat, ConversionControl.unbounded());
+    }
+
+    /**
+     * Igual que {@link #convert(InputStream, OutputStream, String)}, pero abortando el decode/encode
+     * en curso cuando {@code control} vence o se cancela.
+     *
+     * @throws ConversionCancelledException si la conversión fue cancelada
+     */
+    public void convert(InputStream inputStream, OutputStream outputStream, String targetFormat,
+                        ConversionControl control) throws ConvertException {
+        convert(inputStream, outputStream, targetFormat, ConversionOptions.defaults(), control);
+    }
+
+    /**
+     * Conversión con opciones: con {@code maxBytes} se decodifica una vez y se busca en paralelo
+     * la mayor calidad de compresión cuya salida entra en ese tamaño.
+     *
+     * @throws OutputTooLargeException si no entra en {@code maxBytes} con ninguna calidad
+     */
+    public void convert(InputStream inputStream, OutputStream outputStream, String targetFormat,
+                        ConversionOptions options, ConversionControl control) throws ConvertException {
 
         try {
+            control.checkpoint();
             byte[] imageData = inputStream.readAllBytes();
             //validate writeable format
             imageUtils.validateWriteableFormat(targetFormat);
@@ -33,21 +72,65 @@ public class ImageService implements ConvertService {
             imageUtils.validateReadableFormat(
                             imageUtils.getImageFormat(new ByteArrayInputStream(imageData)));
             //img convert
-            imageUtils.writeImage(imageUtils.readImage(new ByteArrayInputStream(imageData)),
-                    targetFormat, outputStream);
+            BufferedImage image = imageUtils.readImage(new ByteArrayInputStream(imageData), control);
+            try {
+                if (options.maxBytes() != null) {
+                    imageUtils.writeImageWithinBytes(image, targetFormat, outputStream, options.maxBytes(),
+                            options.progressive(), qualitySearchExecutor, control);
+                } else if (options.progressive()) {
+                    imageUtils.writeImageProgressive(image, targetFormat, outputStream, control);
+                } else {
+                    imageUtils.writeImage(image, targetFormat, outputStream, control);
+                }
+            } finally {
+                // ya codificada, la imagen vuelve al pool
+                imageUtils.releaseImage(image);
+            }
+        } catch (ConversionCancelledException e) {
+            metrics.cancelled(control.getReason());
+            throw e;
+        } catch (OutputTooLargeException e) {
+            throw e;
         } catch (Exception e) {
-            e.printStackTrace();
+            // la causa viaja en la excepción: no se imprime en stderr de cada thread que convierte
             throw new ConvertException("Error during image conversion", e);
         }
     }
+
+    /**
+     * Dimensiones, formato, frames y modelo de color leídos solo del header, sin decodificar la imagen.
+     */
+    public ImageInfo getInfo(InputStream inputStream) throws ConvertException {
+        try {
+            return imageUtils.readImageInfo(inputStream);
+        } catch (IOException e) {
+            throw new ReadFileException("Error reading image header: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Valida la entrada con las mismas comprobaciones que {@link #convert}: que haya un reader para la imagen,
+     * en un formato legible, y que el formato de salida se pueda escribir. Permite rechazar una conversión
+     * antes de empezar a responder.
+     *
+     * @throws ReadFileException si ningún reader reconoce la imagen o el formato no es legible
+     * @throws WriteFileException si el formato de salida no se puede escribir
+     */
+    public void validate(byte[] imageData, String targetFormat) throws ConvertException {
+        imageUtils.validateWriteableFormat(targetFormat);
+        try {
+            imageUtils.validateReadableFormat(imageUtils.getImageFormat(new ByteArrayInputStream(imageData)));
+        } catch (IOException e) {
+            throw new ReadFileException("Invalid file for image conversion: " + e.getMessage(), e);
+        }
+    }
+    /**
+     * Nombres normalizados precalculados al inicio; no se arma un set nuevo en cada llamada.
+     */
     public Set<String> getWriteableFormats(){
-        return imageUtils.getWriteableFormats().stream()
-                .map(String::toLowerCase)
-                .collect(Collectors.toSet());
+        return imageUtils.getWriteableFormats();
     }
     public Set<String> getReadableFormats(){
-        return imageUtils.getReadableFormats().stream()
-                       .map(String::toLowerCase)
-                       .collect(Collectors.toSet());
+        return imageUtils.getReadableFormats();
     }
 }
@@ -0,0 +1,51 @@
+package com.marco.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Envuelve la salida de la respuesta: si falla una escritura (cliente desconectado) cancela la
+ * conversión para que no se siga codificando para nadie.
+ */
+public class CancellingOutputStream extends FilterOutputStream {
+
+    private final ConversionControl control;
+
+    public CancellingOutputStream(OutputStream out, ConversionControl control) {
+        super(out);
+        this.control = control;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        try {
+            out.write(b);
+        } catch (IOException e) {
+            throw disconnected(e);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        try {
+            out.write(b, off, len);
+        } catch (IOException e) {
+            throw disconnected(e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw disconnected(e);
+        }
+    }
+
+    private IOException disconnected(IOException e) {
+        control.cancel(ConversionControl.Reason.DISCONNECT);
+        return e;
+    }
+}
@@ -0,0 +1,171 @@
+package com.marco.util;
+
+import com.marco.exception.ConversionCancelledException;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Deadline y cancelación de una conversión en curso.
+ * <p>
+ * Los readers/writers activos se registran con {@link #onCancel(Runnable)}; al vencer el deadline
+ * (o al llamar a {@link #cancel(Reason)}) se ejecutan sus {@code abort()} desde otro thread, y el
+ * thread que convierte corta en el siguiente {@link #checkpoint()}.
+ */
+public class ConversionControl implements AutoCloseable {
+
+    public enum Reason {
+        DEADLINE,
+        DISCONNECT,
+        /**
+         * Cancelada del lado del servidor, sin que venza el deadline ni se vaya el cliente: un candidato que
+         * falló detiene a los demás, el request terminó antes que la conversión o se interrumpió el thread
+         * (por ejemplo al apagar el servidor).
+         */
+        ABORTED
+    }
+
+    /**
+     * Handle de un abort registrado; se cierra cuando el reader/writer termina.
+     */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final ScheduledExecutorService DEADLINE_TIMER =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "conversion-deadline");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private final ScheduledFuture<?> deadlineTask;
+    private final Registration parentRegistration;
+    private final AtomicReference<Reason> reason = new AtomicReference<>();
+    private final Set<Runnable> abortActions = ConcurrentHashMap.newKeySet();
+
+    private ConversionControl(Duration timeout) {
+        this.hasDeadline = timeout != null;
+        this.parentRegistration = null;
+        if (timeout == null) {
+            this.deadlineNanos = Long.MAX_VALUE;
+            this.deadlineTask = null;
+        } else {
+            this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+            this.deadlineTask = DEADLINE_TIMER.schedule(
+                    () -> cancel(Reason.DEADLINE), timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private ConversionControl(ConversionControl parent) {
+        this.hasDeadline = parent.hasDeadline;
+        this.deadlineNanos = parent.deadlineNanos;
+        this.deadlineTask = null;
+        // el timer del padre cancela al padre, y el padre cancela al hijo
+        this.parentRegistration = parent.onCancel(() -> cancel(parent.getReason()));
+    }
+
+    /**
+     * Control sin deadline; solo se cancela explícitamente.
+     */
+    public static ConversionControl unbounded() {
+        return new ConversionControl((Duration) null);
+    }
+
+    public static ConversionControl withTimeout(Duration timeout) {
+        if (timeout == null || timeout.isNegative()) {
+            throw new IllegalArgumentException("Timeout must be zero or positive");
+        }
+        return new ConversionControl(timeout);
+    }
+
+    /**
+     * Control hijo con el mismo deadline: se cancela cuando se cancela este, pero cancelarlo
+     * no cancela a este. Sirve para detener una parte de la conversión sin cortar el resto.
+     */
+    public ConversionControl child() {
+        return new ConversionControl(this);
+    }
+
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     * @return nanosegundos hasta el deadline ({@code Long.MAX_VALUE} si no tiene)
+     */
+    public long remainingNanos() {
+        if (!hasDeadline()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * Cancela la conversión y aborta los readers/writers registrados.
+     *
+     * @return false si ya estaba cancelada
+     */
+    public boolean cancel(Reason cancelReason) {
+        if (!reason.compareAndSet(null, cancelReason)) {
+            return false;
+        }
+        abortActions.forEach(Runnable::run);
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return reason.get() != null;
+    }
+
+    /**
+     * @return el motivo de la cancelación, o null si no fue cancelada
+     */
+    public Reason getReason() {
+        return reason.get();
+    }
+
+    public Registration onCancel(Runnable abortAction) {
+        abortActions.add(abortAction);
+        if (isCancelled()) {
+            // cancelada antes de registrarse
+            abortAction.run();
+        }
+        return () -> abortActions.remove(abortAction);
+    }
+
+    /**
+     * Punto de corte entre etapas de la conversión.
+     *
+     * @throws ConversionCancelledException si venció el deadline o se canceló
+     */
+    public void checkpoint() throws ConversionCancelledException {
+        if (hasDeadline() && System.nanoTime() - deadlineNanos >= 0) {
+            cancel(Reason.DEADLINE);
+        }
+        Reason current = reason.get();
+        if (current != null) {
+            throw new ConversionCancelledException("Conversion cancelled: " + current.name().toLowerCase());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (deadlineTask != null) {
+            deadlineTask.cancel(false);
+        }
+        if (parentRegistration != null) {
+            parentRegistration.close();
+        }
+        abortActions.clear();
+    }
+}
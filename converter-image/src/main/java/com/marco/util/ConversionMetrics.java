@@ -0,0 +1,59 @@
+package com.marco.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas de las conversiones, publicadas en el {@link MeterRegistry} de la aplicación.
+ */
+@Component
+public class ConversionMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> queueWaitTimers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ConversionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void cancelled(ConversionControl.Reason reason) {
+        registry.counter("converter.conversions.cancelled",
+                "reason", reason.name().toLowerCase()).increment();
+    }
+
+    public void queueWait(String lane, long nanos) {
+        queueWaitTimers.computeIfAbsent(lane, name -> Timer.builder("converter.lane.queue.wait")
+                        .tag("lane", name)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void rejected(String lane) {
+        registry.counter("converter.lane.rejected", "lane", lane).increment();
+    }
+
+    /**
+     * Proceso worker descartado: por cantidad de jobs, heap, o porque se mató (timeout/cancelación) o se cayó.
+     */
+    public void workerRecycled(String reason) {
+        registry.counter("converter.worker.recycled", "reason", reason).increment();
+    }
+
+    /**
+     * Publica el tamaño de la cola y los threads activos de un lane.
+     */
+    public void monitorLane(String lane, ThreadPoolExecutor executor) {
+        registry.gauge("converter.lane.queue.size", Tags.of("lane", lane), executor, e -> e.getQueue().size());
+        registry.gauge("converter.lane.active", Tags.of("lane", lane), executor, ThreadPoolExecutor::getActiveCount);
+    }
+}
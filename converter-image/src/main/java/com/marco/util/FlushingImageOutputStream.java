@@ -0,0 +1,43 @@
+package com.marco.util;
+
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link MemoryCacheImageOutputStream} que pasa al destino lo ya escrito cada {@code flushThreshold} bytes.
+ * <p>
+ * Solo sirve para writers que nunca vuelven atrás ({@code seek}) sobre lo escrito, como JPEG:
+ * lo que se envía deja de estar en el cache.
+ */
+public class FlushingImageOutputStream extends MemoryCacheImageOutputStream {
+
+    private final OutputStream target;
+    private final int flushThreshold;
+
+    public FlushingImageOutputStream(OutputStream target, int flushThreshold) {
+        super(target);
+        this.target = target;
+        this.flushThreshold = flushThreshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        super.write(b);
+        flushIfNeeded();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        super.write(b, off, len);
+        flushIfNeeded();
+    }
+
+    private void flushIfNeeded() throws IOException {
+        long position = getStreamPosition();
+        if (position - getFlushedPosition() >= flushThreshold) {
+            flushBefore(position);
+            target.flush();
+        }
+    }
+}
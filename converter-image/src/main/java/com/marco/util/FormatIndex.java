@@ -0,0 +1,209 @@
+package com.marco.util;
+
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.spi.ImageReaderWriterSpi;
+import javax.imageio.spi.ImageWriterSpi;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Índice inmutable de los formatos de ImageIO, armado una sola vez al inicio.
+ * <p>
+ * Los nombres, alias, sufijos y MIME types (normalizados a minúscula) apuntan al reader y al writer
+ * que elegiría ImageIO para esa clave, y a las capacidades de escritura del formato.
+ */
+@Component
+public class FormatIndex {
+
+    /**
+     * Un formato y las capacidades de su writer (todas en false para formatos de solo lectura).
+     */
+    public record Format(String name,
+                         Set<String> names,
+                         List<String> suffixes,
+                         List<String> mimeTypes,
+                         boolean readable,
+                         boolean writeable,
+                         boolean alpha,
+                         boolean multiFrame,
+                         boolean tiling,
+                         boolean progressive,
+                         List<String> compressionTypes,
+                         boolean losslessCompression) {
+
+        public String mimeType() {
+            return mimeTypes.isEmpty() ? "application/octet-stream" : mimeTypes.get(0);
+        }
+
+        public String suffix() {
+            return suffixes.isEmpty() ? name : suffixes.get(0);
+        }
+
+        public boolean compressible() {
+            return !compressionTypes.isEmpty();
+        }
+
+        /**
+         * La calidad de compresión cambia la imagen, no solo el tamaño (JPEG); en los formatos sin
+         * pérdida (PNG, GIF, BMP) solo cambia el esfuerzo de compresión.
+         */
+        public boolean lossyCompression() {
+            return compressible() && !losslessCompression;
+        }
+    }
+
+    private static final ImageTypeSpecifier ARGB =
+            ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB);
+
+    private final Map<String, ImageWriterSpi> writers;
+    private final Map<String, Format> formats;
+    private final Set<String> readableFormats;
+    private final Set<String> writeableFormats;
+
+    public FormatIndex() {
+        this(IIORegistry.getDefaultInstance());
+    }
+
+    FormatIndex(IIORegistry registry) {
+        Map<String, ImageReaderSpi> readers = index(registry.getServiceProviders(ImageReaderSpi.class, true));
+        this.writers = index(registry.getServiceProviders(ImageWriterSpi.class, true));
+
+        // las claves que resuelven al mismo par reader/writer comparten el Format
+        Map<List<ImageReaderWriterSpi>, Format> byProviders = new HashMap<>();
+        Map<String, Format> formats = new HashMap<>();
+        Stream.concat(readers.keySet().stream(), writers.keySet().stream()).distinct().forEach(key -> {
+            ImageReaderSpi reader = readers.get(key);
+            ImageWriterSpi writer = writers.get(key);
+            formats.put(key, byProviders.computeIfAbsent(Arrays.asList(reader, writer),
+                    providers -> describe(reader, writer)));
+        });
+        this.formats = Map.copyOf(formats);
+        this.readableFormats = formatNames(registry.getServiceProviders(ImageReaderSpi.class, true));
+        this.writeableFormats = formatNames(registry.getServiceProviders(ImageWriterSpi.class, true));
+    }
+
+    public static String normalize(String key) {
+        return key.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Formato por nombre, alias, sufijo o MIME type, sin distinguir mayúsculas.
+     */
+    public Optional<Format> find(String key) {
+        return key == null ? Optional.empty() : Optional.ofNullable(formats.get(normalize(key)));
+    }
+
+    public Optional<Format> findWriteable(String key) {
+        return find(key).filter(Format::writeable);
+    }
+
+    /**
+     * Nombres y alias normalizados de los formatos que se pueden leer.
+     */
+    public Set<String> getReadableFormats() {
+        return readableFormats;
+    }
+
+    /**
+     * Nombres y alias normalizados de los formatos que se pueden escribir.
+     */
+    public Set<String> getWriteableFormats() {
+        return writeableFormats;
+    }
+
+    ImageWriterSpi writerFor(String key) {
+        return key == null ? null : writers.get(normalize(key));
+    }
+
+    private static <T extends ImageReaderWriterSpi> Map<String, T> index(Iterator<T> providers) {
+        Map<String, T> index = new HashMap<>();
+        // el orden del registry es el mismo que usa ImageIO: gana el primer provider de cada clave
+        providers.forEachRemaining(provider -> keys(provider).forEach(key -> index.putIfAbsent(key, provider)));
+        return Map.copyOf(index);
+    }
+
+    private static Stream<String> keys(ImageReaderWriterSpi provider) {
+        return Stream.of(provider.getFormatNames(), provider.getFileSuffixes(), provider.getMIMETypes())
+                .flatMap(values -> normalized(values).stream());
+    }
+
+    private static Set<String> formatNames(Iterator<? extends ImageReaderWriterSpi> providers) {
+        Set<String> names = new LinkedHashSet<>();
+        providers.forEachRemaining(provider -> names.addAll(normalized(provider.getFormatNames())));
+        return Set.copyOf(names);
+    }
+
+    private static Format describe(ImageReaderSpi reader, ImageWriterSpi writer) {
+        Set<String> names = new LinkedHashSet<>();
+        Set<String> suffixes = new LinkedHashSet<>();
+        Set<String> mimeTypes = new LinkedHashSet<>();
+        for (ImageReaderWriterSpi provider : Arrays.asList(writer, reader)) {
+            if (provider != null) {
+                names.addAll(normalized(provider.getFormatNames()));
+                suffixes.addAll(normalized(provider.getFileSuffixes()));
+                mimeTypes.addAll(normalized(provider.getMIMETypes()));
+            }
+        }
+        String name = names.iterator().next();
+
+        boolean alpha = false;
+        boolean multiFrame = false;
+        boolean tiling = false;
+        boolean progressive = false;
+        List<String> compressionTypes = List.of();
+        boolean losslessCompression = false;
+        if (writer != null) {
+            alpha = writer.canEncodeImage(ARGB);
+            try {
+                ImageWriter instance = writer.createWriterInstance();
+                try {
+                    ImageWriteParam param = instance.getDefaultWriteParam();
+                    multiFrame = instance.canWriteSequence();
+                    tiling = param.canWriteTiles();
+                    progressive = param.canWriteProgressive();
+                    if (param.canWriteCompressed() && param.getCompressionTypes() != null) {
+                        compressionTypes = List.of(param.getCompressionTypes());
+                        // con el mismo tipo que elige ImageUtil.encode: el del writer o el primero
+                        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                        if (param.getCompressionType() == null) {
+                            param.setCompressionType(compressionTypes.get(0));
+                        }
+                        losslessCompression = param.isCompressionLossless();
+                    }
+                } finally {
+                    instance.dispose();
+                }
+            } catch (Exception e) {
+                // un plugin que no se puede instanciar queda solo con sus nombres y MIME types
+            }
+        }
+        return new Format(name, Set.copyOf(names), List.copyOf(suffixes), List.copyOf(mimeTypes),
+                reader != null, writer != null, alpha, multiFrame, tiling, progressive, compressionTypes,
+                losslessCompression);
+    }
+
+    private static List<String> normalized(String[] values) {
+        if (values == null) {
+            return List.of();
+        }
+        return Arrays.stream(values)
+                .filter(value -> value != null && !value.isBlank())
+                .map(FormatIndex::normalize)
+                .toList();
+    }
+}
@@ -0,0 +1,123 @@
+package com.marco.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool acotado de {@link BufferedImage} por ancho, alto y tipo, para reusar los buffers de decode
+ * y de las transformaciones intermedias en lugar de alocar arrays del tamaño de la imagen en cada conversión.
+ * <p>
+ * Solo se reusan tipos estándar sin paleta: las imágenes indexadas dependen de su {@code IndexColorModel}.
+ */
+@Component
+public class ImagePool {
+
+    private record Key(int width, int height, int type) {
+    }
+
+    private final int maxPerKey;
+    private final long maxPooledBytes;
+    private final Map<Key, BlockingDeque<BufferedImage>> pool = new ConcurrentHashMap<>();
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    /**
+     * El tope por defecto (64MB) alcanza para el decode y la imagen sin alpha de los 2 threads del lane
+     * grande con imágenes de 4 MP (16MB cada una en TYPE_INT_RGB), sin retener más memoria ociosa.
+     */
+    @Autowired
+    public ImagePool(@Value("${converter.image-pool.max-per-key:4}") int maxPerKey,
+                     @Value("${converter.image-pool.max-size:64MB}") DataSize maxSize) {
+        this.maxPerKey = maxPerKey;
+        this.maxPooledBytes = maxSize.toBytes();
+    }
+
+    /**
+     * Pool que nunca retiene imágenes.
+     */
+    public static ImagePool disabled() {
+        return new ImagePool(0, DataSize.ofBytes(0));
+    }
+
+    /**
+     * @return una imagen del pool, o null si no hay ninguna libre con esas características
+     */
+    public BufferedImage poll(int width, int height, int type) {
+        if (!isPoolable(type)) {
+            return null;
+        }
+        BlockingDeque<BufferedImage> images = pool.get(new Key(width, height, type));
+        BufferedImage image = images == null ? null : images.pollFirst();
+        if (image != null) {
+            pooledBytes.addAndGet(-sizeOf(image));
+        }
+        return image;
+    }
+
+    /**
+     * Imagen del pool o, si no hay, una nueva. El contenido de una imagen reusada es el de su uso anterior.
+     */
+    public BufferedImage acquire(int width, int height, int type) {
+        BufferedImage image = poll(width, height, type);
+        return image != null ? image : new BufferedImage(width, height, type);
+    }
+
+    /**
+     * Deja todos los samples en 0, como en una imagen recién alocada (negro, y transparente si tiene alpha).
+     */
+    public static void clear(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Devuelve una imagen al pool; quien la libera no debe volver a usarla.
+     */
+    public void release(BufferedImage image) {
+        if (maxPerKey <= 0 || image == null || !isPoolable(image.getType())) {
+            return;
+        }
+        long bytes = sizeOf(image);
+        if (pooledBytes.addAndGet(bytes) > maxPooledBytes) {
+            pooledBytes.addAndGet(-bytes);
+            return;
+        }
+        BlockingDeque<BufferedImage> images = pool.computeIfAbsent(
+                new Key(image.getWidth(), image.getHeight(), image.getType()),
+                key -> new LinkedBlockingDeque<>(maxPerKey));
+        if (!images.offerFirst(image)) {
+            pooledBytes.addAndGet(-bytes);
+        }
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    private static boolean isPoolable(int type) {
+        return type != BufferedImage.TYPE_CUSTOM
+                && type != BufferedImage.TYPE_BYTE_INDEXED
+                && type != BufferedImage.TYPE_BYTE_BINARY;
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+}
@@ -1,28 +1,74 @@
 package com.marco.util;
 
+import com.marco.exception.ConversionCancelledException;
+import com.marco.exception.OutputTooLargeException;
 import com.marco.exception.ReadFileException;
 import com.marco.exception.WriteFileException;
+import com.marco.model.ImageInfo;
 import jakarta.annotation.PostConstruct;
 import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import javax.imageio.*;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.spi.ImageWriterSpi;
 import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import java.awt.*;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 @Getter
 
 @Component
 public class ImageUtil {
+    // maxBytes search: rounds x candidate qualities per round
+    private static final int QUALITY_SEARCH_ROUNDS = 2;
+    private static final int QUALITY_SEARCH_STEPS = 8;
+    // Writers that never seek back, so their output can be flushed as soon as it is written
+    private static final Set<String> SEQUENTIAL_WRITER_FORMATS = Set.of("jpeg", "jpg");
+    private static final int EARLY_FLUSH_BYTES = 16 * 1024;
+    // For lossless writers the lowest quality is the highest compression (PNG: deflate level 9)
+    private static final float MAX_COMPRESSION_QUALITY = 0f;
+    // readImageInfo never reads more than this prefix of the input
+    static final int HEADER_READ_LIMIT = 256 * 1024;
+
+    // Normalized (lowercase) names and aliases, precomputed by the FormatIndex
     public final Set<String> readableFormats;
     public final Set<String> writeableFormats;
+    private final ImagePool imagePool;
+    private final FormatIndex formatIndex;
 
     public ImageUtil() {
-        this.readableFormats = new HashSet<>(Arrays.asList(ImageIO.getReaderFormatNames()));
-        this.writeableFormats = new HashSet<>(Arrays.asList(ImageIO.getWriterFormatNames()));
+        this(ImagePool.disabled());
+    }
+
+    public ImageUtil(ImagePool imagePool) {
+        this(imagePool, new FormatIndex());
+    }
+
+    @Autowired
+    public ImageUtil(ImagePool imagePool, FormatIndex formatIndex) {
+        this.readableFormats = formatIndex.getReadableFormats();
+        this.writeableFormats = formatIndex.getWriteableFormats();
+        this.imagePool = imagePool;
+        this.formatIndex = formatIndex;
     }
     @PostConstruct
     public void initFormats() {
@@ -38,7 +84,7 @@ public class ImageUtil {
         if (this.readableFormats == null || this.readableFormats.isEmpty()) {
             throw new ReadFileException("No readable formats configured.");
         }
-        if (!readableFormats.contains(format.toLowerCase())) {
+        if (!readableFormats.contains(FormatIndex.normalize(format))) {
             throw new ReadFileException("Unsupported format for reading: " + format);
         }
     }
@@ -50,7 +96,7 @@ public class ImageUtil {
         if (this.writeableFormats == null || this.writeableFormats.isEmpty()) {
             throw new WriteFileException("No writeable formats configured.");
         }
-        if (!writeableFormats.contains(format.toLowerCase())) {
+        if (!writeableFormats.contains(FormatIndex.normalize(format))) {
             throw new WriteFileException("Unsupported format for writing: " + format);
         }
     }
@@ -66,21 +112,58 @@ public class ImageUtil {
         return image;
     }
 
+    public BufferedImage readImage(InputStream inputStream, ConversionControl control)
+            throws ReadFileException, ConversionCancelledException, IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            if (imageInputStream == null) {
+                throw new IOException("Invalid image stream");
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                throw new ReadFileException("Invalid file for image conversion");
+            }
+            // Same as ImageIO.read, but keeping the reader so it can be aborted
+            ImageReader reader = readers.next();
+            try (ConversionControl.Registration ignored = control.onCancel(reader::abort)) {
+                reader.setInput(imageInputStream, true, true);
+                control.checkpoint();
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Decode into a pooled image when one matches the reader's default destination
+                ImageTypeSpecifier type = reader.getImageTypes(0).next();
+                BufferedImage destination = imagePool.poll(
+                        reader.getWidth(0), reader.getHeight(0), type.getBufferedImageType());
+                if (destination != null) {
+                    // Not every reader writes every pixel (plugins, partial reads): start blank like a new image
+                    ImagePool.clear(destination);
+                    param.setDestination(destination);
+                }
+                BufferedImage image = reader.read(0, param);
+                // An aborted reader returns a partial image instead of failing
+                control.checkpoint();
+                return image;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
     protected BufferedImage removeAlphaChannel(BufferedImage image) {
         // If the image does not have an alpha channel, return it as is
         if (!image.getColorModel().hasAlpha()) {
             return image;
         }
 
-        // Create a new image without an alpha channel (TYPE_INT_RGB)
-        BufferedImage newImage = new BufferedImage(
+        // Take an image without an alpha channel (TYPE_INT_RGB) from the pool
+        BufferedImage newImage = imagePool.acquire(
                 image.getWidth(),
                 image.getHeight(),
                 BufferedImage.TYPE_INT_RGB
         );
 
-        // Draw the original image onto the new image
+        // Draw the original image onto the new image, over black as on a freshly allocated one
         Graphics2D g = newImage.createGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, newImage.getWidth(), newImage.getHeight());
         g.drawImage(image, 0, 0, null);
         g.dispose();
 
@@ -88,33 +171,425 @@ public class ImageUtil {
     }
 
     protected ImageWriter getImageWriter(String targetFormat) throws WriteFileException {
-        // Fetches an iterator of ImageWriters that support the target format
-        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(targetFormat);
-        if (!writers.hasNext()) {
+        // Looks up the writer provider ImageIO would pick for the target format
+        ImageWriterSpi provider = formatIndex.writerFor(targetFormat);
+        if (provider == null) {
             // Throws an exception if no writer is available for the target format
             throw new WriteFileException("No writer found for the format: " + targetFormat);
         }
-        // Returns the first available ImageWriter
-        return writers.next();
+        try {
+            return provider.createWriterInstance();
+        } catch (IOException e) {
+            throw new WriteFileException("Unable to create writer for the format: " + targetFormat, e);
+        }
     }
 
 
 
     public void writeImage(BufferedImage image, String targetFormat, OutputStream outputStream)
             throws WriteFileException {
+        try {
+            writeImage(image, targetFormat, outputStream, ConversionControl.unbounded());
+        } catch (ConversionCancelledException e) {
+            // An unbounded control is never cancelled
+            throw new WriteFileException(e.getMessage(), e);
+        }
+    }
+
+    public void writeImage(BufferedImage image, String targetFormat, OutputStream outputStream,
+                           ConversionControl control) throws WriteFileException, ConversionCancelledException {
+        BufferedImage opaqueImage = null;
         try{
             // Get an iterator for ImageWriters that support the target format
             ImageWriter writer = getImageWriter(targetFormat);
             ImageWriteParam param = writer.getDefaultWriteParam();
             // Remove the alpha channel if present
-            image = removeAlphaChannel(image);
+            opaqueImage = removeAlphaChannel(image);
             // Write the image using the specific writer
-            writer.setOutput(ImageIO.createImageOutputStream(outputStream));
-            writer.write(null, new IIOImage(image, null, null), param);
+            try (ConversionControl.Registration ignored = control.onCancel(writer::abort)) {
+                writer.setOutput(ImageIO.createImageOutputStream(outputStream));
+                writer.write(null, new IIOImage(opaqueImage, null, null), param);
+            }
+            // An aborted writer returns normally with a truncated output
+            control.checkpoint();
         }catch(IOException e){
+            // A write failure after cancelling is reported as the cancellation
+            control.checkpoint();
+            throw new WriteFileException("Error writing image: " + e.getMessage(), e);
+        } finally {
+            releaseIntermediate(image, opaqueImage);
+        }
+
+    }
+
+    /**
+     * Writes the image in progressive/interlaced mode when the writer supports it (JPEG, PNG, GIF),
+     * pushing the encoded bytes to {@code outputStream} as the writer emits them instead of at the end.
+     * How early that is depends on the writer: the PNG writer emits its IDAT chunks while encoding, the JDK
+     * JPEG writer emits every progressive scan in its final pass, and GIF output only arrives at the end.
+     */
+    public void writeImageProgressive(BufferedImage image, String targetFormat, OutputStream outputStream,
+                                      ConversionControl control)
+            throws WriteFileException, ConversionCancelledException {
+        BufferedImage opaqueImage = null;
+        ImageWriter writer = getImageWriter(targetFormat);
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteProgressive()) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+            opaqueImage = removeAlphaChannel(image);
+            // Memory cache instead of ImageIO's file cache, which only reaches the output on close
+            ImageOutputStream output = SEQUENTIAL_WRITER_FORMATS.contains(FormatIndex.normalize(targetFormat))
+                    ? new FlushingImageOutputStream(outputStream, EARLY_FLUSH_BYTES)
+                    : new MemoryCacheImageOutputStream(outputStream);
+            try (ConversionControl.Registration ignored = control.onCancel(writer::abort);
+                 output) {
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(opaqueImage, null, null), param);
+            }
+            outputStream.flush();
+            control.checkpoint();
+        } catch (IOException e) {
+            control.checkpoint();
+            throw new WriteFileException("Error writing image: " + e.getMessage(), e);
+        } finally {
+            writer.dispose();
+            releaseIntermediate(image, opaqueImage);
+        }
+    }
+
+    /**
+     * Returns an image to the pool once it has been encoded. The caller must not use it afterwards.
+     */
+    public void releaseImage(BufferedImage image) {
+        imagePool.release(image);
+    }
+
+    private void releaseIntermediate(BufferedImage source, BufferedImage intermediate) {
+        if (intermediate != null && intermediate != source) {
+            imagePool.release(intermediate);
+        }
+    }
+
+    /**
+     * Writes the image with the highest compression quality whose output fits in {@code maxBytes}.
+     * Candidate qualities are encoded in parallel on {@code executor}, all from the same decoded image.
+     * Lossless writers (PNG, GIF, BMP) are encoded once at maximum compression, since their quality
+     * only trades speed for size.
+     */
+    public void writeImageWithinBytes(BufferedImage image, String targetFormat, OutputStream outputStream,
+                                      long maxBytes, boolean progressive, ExecutorService executor,
+                                      ConversionControl control)
+            throws WriteFileException, ConversionCancelledException {
+        // Remove the alpha channel once, every candidate encodes the same image
+        BufferedImage opaqueImage = removeAlphaChannel(image);
+        byte[] best;
+        try {
+            FormatIndex.Format format = formatIndex.findWriteable(targetFormat)
+                    .orElseThrow(() -> new WriteFileException("No writer found for the format: " + targetFormat));
+            if (format.lossyCompression()) {
+                best = searchQuality(opaqueImage, targetFormat, maxBytes, progressive, executor, control);
+            } else {
+                // Nothing to search: the smallest lossless encoding either fits or not
+                Float quality = format.compressible() ? MAX_COMPRESSION_QUALITY : null;
+                best = encode(opaqueImage, targetFormat, quality, progressive, control);
+                if (best.length > maxBytes) {
+                    best = null;
+                }
+            }
+        } finally {
+            // Every candidate has finished or been aborted by now, none is still reading the image
+            releaseIntermediate(image, opaqueImage);
+        }
+        if (best == null) {
+            throw new OutputTooLargeException(
+                    "Image cannot be written as " + targetFormat + " within " + maxBytes + " bytes");
+        }
+        try {
+            outputStream.write(best);
+        } catch (IOException e) {
+            control.checkpoint();
+            throw new WriteFileException("Error writing image: " + e.getMessage(), e);
+        }
+    }
+
+    private byte[] searchQuality(BufferedImage image, String targetFormat, long maxBytes, boolean progressive,
+                                 ExecutorService executor, ConversionControl control)
+            throws WriteFileException, ConversionCancelledException {
+        float low = 0f;
+        float high = 1f;
+        byte[] best = null;
+        for (int round = 0; round < QUALITY_SEARCH_ROUNDS; round++) {
+            // The first round also tries both ends, later rounds only the points in between
+            float step = (high - low) / QUALITY_SEARCH_STEPS;
+            int first = round == 0 ? 0 : 1;
+            int last = round == 0 ? QUALITY_SEARCH_STEPS : QUALITY_SEARCH_STEPS - 1;
+            List<Float> qualities = new ArrayList<>();
+            for (int i = first; i <= last; i++) {
+                qualities.add(low + step * i);
+            }
+            List<byte[]> encoded = encodeAll(image, targetFormat, qualities, progressive, executor, control);
+
+            // Highest quality that fits, without assuming the size grows monotonically
+            int fit = -1;
+            for (int i = 0; i < encoded.size(); i++) {
+                if (encoded.get(i).length <= maxBytes) {
+                    fit = i;
+                }
+            }
+            if (fit < 0) {
+                return best;
+            }
+            best = encoded.get(fit);
+            if (round == 0 && fit == qualities.size() - 1) {
+                // Even the best quality fits
+                return best;
+            }
+            low = qualities.get(fit);
+            if (fit + 1 < qualities.size()) {
+                high = qualities.get(fit + 1);
+            }
+        }
+        return best;
+    }
+
+    private List<byte[]> encodeAll(BufferedImage image, String targetFormat, List<Float> qualities,
+                                   boolean progressive, ExecutorService executor, ConversionControl control)
+            throws WriteFileException, ConversionCancelledException {
+        // The candidates share a child control: the first failure aborts the writers still running,
+        // without cancelling the conversion itself
+        try (ConversionControl search = control.child()) {
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            List<Future<byte[]>> candidates = new ArrayList<>();
+            try {
+                for (Float quality : qualities) {
+                    candidates.add(executor.submit(() -> {
+                        try {
+                            return encode(image, targetFormat, quality, progressive, search);
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                            search.cancel(ConversionControl.Reason.ABORTED);
+                            throw e;
+                        }
+                    }));
+                }
+            } catch (RejectedExecutionException e) {
+                search.cancel(ConversionControl.Reason.ABORTED);
+                awaitAll(candidates);
+                throw e;
+            }
+            List<byte[]> encoded = new ArrayList<>();
+            try {
+                for (Future<byte[]> candidate : candidates) {
+                    encoded.add(candidate.get());
+                }
+            } catch (ExecutionException e) {
+                search.cancel(ConversionControl.Reason.ABORTED);
+                // The image is released by the caller: no candidate may still be reading it
+                awaitAll(candidates);
+                // A deadline or disconnect wins over the candidates it aborted
+                control.checkpoint();
+                Exception cause = failure.get() != null ? failure.get() : (Exception) e.getCause();
+                if (cause instanceof ConversionCancelledException cancelled) {
+                    throw cancelled;
+                }
+                if (cause instanceof WriteFileException writeFileException) {
+                    throw writeFileException;
+                }
+                throw new WriteFileException("Error writing image: " + cause.getMessage(), cause);
+            } catch (InterruptedException e) {
+                control.cancel(ConversionControl.Reason.ABORTED);
+                awaitAll(candidates);
+                Thread.currentThread().interrupt();
+                throw new ConversionCancelledException("Conversion cancelled: interrupted", e);
+            }
+            return encoded;
+        }
+    }
+
+    /**
+     * Waits until every candidate has finished, whatever its result. The candidates are never cancelled:
+     * a cancelled future reports done while its task may still be encoding the shared image.
+     */
+    private static void awaitAll(List<Future<byte[]>> candidates) {
+        boolean interrupted = false;
+        for (Future<byte[]> candidate : candidates) {
+            while (true) {
+                try {
+                    candidate.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // Aborted writers finish quickly, keep waiting
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Encodes an image without alpha channel in memory, with the given compression quality
+     * (or the writer's default when {@code quality} is null), progressive if requested and supported.
+     */
+    protected byte[] encode(BufferedImage opaqueImage, String targetFormat, Float quality, boolean progressive,
+                            ConversionControl control) throws WriteFileException, ConversionCancelledException {
+        ImageWriter writer = getImageWriter(targetFormat);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ConversionControl.Registration ignored = control.onCancel(writer::abort);
+             ImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (progressive && param.canWriteProgressive()) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+            if (quality != null) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null && param.getCompressionTypes() != null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(quality);
+            }
+            writer.setOutput(output);
+            // write() clears an abort requested before it started, so check right before
+            control.checkpoint();
+            writer.write(null, new IIOImage(opaqueImage, null, null), param);
+        } catch (IOException e) {
+            control.checkpoint();
             throw new WriteFileException("Error writing image: " + e.getMessage(), e);
+        } finally {
+            writer.dispose();
         }
+        control.checkpoint();
+        return bytes.toByteArray();
+    }
 
+    public Dimension getImageDimensions(InputStream inputStream) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            if (imageInputStream == null) {
+                throw new IOException("Invalid image stream");
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                // Only the header is parsed, pixels are never decoded
+                reader.setInput(imageInputStream, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads format, dimensions and color model from the header only. The input is read through a bounded
+     * in-memory stream (no file cache copy), and reading stops once the reader has what it needs.
+     * <p>
+     * Headers that lie past {@link #HEADER_READ_LIMIT} (a TIFF with its IFD at the end, JPEG with large
+     * EXIF/ICC segments) are read again from the start without the limit.
+     */
+    public ImageInfo readImageInfo(InputStream inputStream) throws IOException {
+        RecordingInputStream recording = new RecordingInputStream(inputStream);
+        try {
+            return readHeader(new LimitedInputStream(recording, HEADER_READ_LIMIT));
+        } catch (IOException e) {
+            if (recording.recordedBytes() < HEADER_READ_LIMIT) {
+                // the whole input fit in the limit: the header is really unreadable
+                throw e;
+            }
+            return readHeader(recording.replay());
+        }
+    }
+
+    private ImageInfo readHeader(InputStream inputStream) throws IOException {
+        try (ImageInputStream imageInputStream = new MemoryCacheImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                // Forward only and ignoring metadata: readers stop at the first image data (e.g. PNG IDAT)
+                reader.setInput(imageInputStream, true, true);
+                ImageReaderSpi provider = reader.getOriginatingProvider();
+                String[] mimeTypes = provider == null ? null : provider.getMIMETypes();
+                String format = reader.getFormatName().toLowerCase();
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                // allowSearch=false: -1 instead of scanning every frame
+                int frameCount = reader.getNumImages(false);
+                ColorModel colorModel = headerColorModel(reader);
+
+                return new ImageInfo(
+                        format,
+                        mimeTypes == null || mimeTypes.length == 0 ? null : mimeTypes[0],
+                        width,
+                        height,
+                        frameCount,
+                        colorModel == null ? null : describeColorModel(colorModel),
+                        colorModel == null ? -1 : colorModel.getPixelSize(),
+                        colorModel != null && colorModel.hasAlpha(),
+                        metadataFormats(provider));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Color model of the first image, or null when the reader needs more than the header prefix to tell
+     * (the JDK PNG reader walks every chunk up to IEND for palette images).
+     */
+    private ColorModel headerColorModel(ImageReader reader) {
+        try {
+            ImageTypeSpecifier type = reader.getRawImageType(0);
+            if (type == null) {
+                type = reader.getImageTypes(0).next();
+            }
+            return type.getColorModel();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String describeColorModel(ColorModel colorModel) {
+        if (colorModel instanceof IndexColorModel) {
+            return "indexed";
+        }
+        return switch (colorModel.getColorSpace().getType()) {
+            case ColorSpace.TYPE_RGB -> "rgb";
+            case ColorSpace.TYPE_GRAY -> "gray";
+            case ColorSpace.TYPE_CMYK -> "cmyk";
+            case ColorSpace.TYPE_YCbCr -> "ycbcr";
+            default -> "other";
+        };
+    }
+
+    /**
+     * Image metadata formats declared by the reader provider, in IIOMetadata order (native, standard, extra),
+     * without parsing the metadata itself.
+     */
+    private List<String> metadataFormats(ImageReaderSpi provider) {
+        if (provider == null) {
+            return List.of();
+        }
+        List<String> formats = new ArrayList<>();
+        if (provider.getNativeImageMetadataFormatName() != null) {
+            formats.add(provider.getNativeImageMetadataFormatName());
+        }
+        if (provider.isStandardImageMetadataFormatSupported()) {
+            formats.add(IIOMetadataFormatImpl.standardMetadataFormatName);
+        }
+        if (provider.getExtraImageMetadataFormatNames() != null) {
+            formats.addAll(Arrays.asList(provider.getExtraImageMetadataFormatNames()));
+        }
+        return List.copyOf(formats);
     }
 
     public String getImageFormat(InputStream inputStream) throws IOException {
@@ -0,0 +1,78 @@
+package com.marco.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+/**
+ * Guarda en memoria los bytes leídos del stream original, para poder volver a leerlos desde el principio
+ * con {@link #replay()}. No cierra el stream original.
+ */
+class RecordingInputStream extends FilterInputStream {
+
+    private final ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+
+    RecordingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            recorded.write(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            recorded.write(b, off, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // se lee en vez de saltar, para que lo salteado también quede guardado
+        byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        // el stream original es de quien lo abrió
+    }
+
+    /**
+     * Cantidad de bytes leídos hasta ahora.
+     */
+    long recordedBytes() {
+        return recorded.size();
+    }
+
+    /**
+     * Los bytes ya leídos seguidos del resto del stream original.
+     */
+    InputStream replay() {
+        return new SequenceInputStream(new ByteArrayInputStream(recorded.toByteArray()), in);
+    }
+}
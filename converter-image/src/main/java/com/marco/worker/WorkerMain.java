@@ -0,0 +1,123 @@
+package com.marco.worker;
+
+import com.marco.config.ImageConfig;
+import com.marco.exception.ConversionCancelledException;
+import com.marco.exception.ConvertException;
+import com.marco.exception.OutputTooLargeException;
+import com.marco.model.ConversionOptions;
+import com.marco.service.ImageService;
+import com.marco.util.ConversionControl;
+import com.marco.util.ConversionMetrics;
+import com.marco.util.ImagePool;
+import com.marco.util.ImageUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Proceso worker: atiende conversiones de a una, leídas de stdin según {@link WorkerProtocol},
+ * y escribe el resultado en stdout. Termina cuando el proceso padre cierra stdin.
+ * <p>
+ * Corre sin contexto de Spring, con su propio heap: un input patológico puede llenarlo o colgar el decoder
+ * sin afectar a la API, que mata y reemplaza al worker.
+ */
+public final class WorkerMain {
+
+    // system properties que pasa WorkerPool, con los valores de converter.quality-search.* de la API
+    public static final String QUALITY_SEARCH_PARALLELISM = "converter.quality-search.parallelism";
+    public static final String QUALITY_SEARCH_QUEUE_CAPACITY = "converter.quality-search.queue-capacity";
+
+    private static final int OUTPUT_BUFFER_BYTES = 64 * 1024;
+    private static final int CHUNK_BYTES = 16 * 1024;
+    private static final List<MemoryPoolMXBean> RETAINED_HEAP_POOLS = retainedHeapPools();
+
+    private WorkerMain() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_BYTES));
+        // stdout es del protocolo: cualquier print (ej. de una librería) va a stderr
+        System.setOut(System.err);
+
+        ExecutorService qualitySearchExecutor = new ImageConfig().qualitySearchExecutor(
+                Integer.getInteger(QUALITY_SEARCH_PARALLELISM, 2), Integer.getInteger(QUALITY_SEARCH_QUEUE_CAPACITY, 64));
+        // sin pool de imágenes: el heap del worker es chico y se recicla el proceso entero
+        ImageService imageService = new ImageService(new ImageUtil(ImagePool.disabled()),
+                new ConversionMetrics(new SimpleMeterRegistry()), qualitySearchExecutor);
+
+        while (true) {
+            WorkerProtocol.Request request;
+            try {
+                request = WorkerProtocol.readRequest(in);
+            } catch (EOFException e) {
+                qualitySearchExecutor.shutdownNow();
+                return;
+            }
+            WorkerProtocol.writeResult(out, handle(imageService, request, out));
+        }
+    }
+
+    static WorkerProtocol.Result handle(ImageService imageService, WorkerProtocol.Request request,
+                                        DataOutputStream out) throws IOException {
+        OutputStream chunks = new BufferedOutputStream(WorkerProtocol.chunkOutputStream(out), CHUNK_BYTES);
+        byte status;
+        String message = "";
+        try (ConversionControl control = request.timeoutMillis() > 0
+                ? ConversionControl.withTimeout(Duration.ofMillis(request.timeoutMillis()))
+                : ConversionControl.unbounded()) {
+            imageService.convert(new ByteArrayInputStream(request.imageData()), chunks, request.targetFormat(),
+                    new ConversionOptions(request.maxBytes(), request.progressive()), control);
+            status = WorkerProtocol.STATUS_OK;
+        } catch (OutputTooLargeException e) {
+            status = WorkerProtocol.STATUS_TOO_LARGE;
+            message = e.getMessage();
+        } catch (ConversionCancelledException e) {
+            status = WorkerProtocol.STATUS_CANCELLED;
+            message = e.getMessage();
+        } catch (ConvertException e) {
+            status = WorkerProtocol.STATUS_ERROR;
+            message = e.getMessage();
+        }
+        // los datos pendientes van antes del frame final
+        chunks.flush();
+        return new WorkerProtocol.Result(status, message, retainedHeapBytes());
+    }
+
+    /**
+     * Heap que sobrevivió al último GC que recorrió la generación vieja. El heap usado incluye basura que el
+     * próximo GC libera, y haría descartar workers sanos; es 0 hasta el primer GC completo.
+     */
+    static long retainedHeapBytes() {
+        long retained = 0;
+        for (MemoryPoolMXBean pool : RETAINED_HEAP_POOLS) {
+            retained += pool.getCollectionUsage().getUsed();
+        }
+        return retained;
+    }
+
+    private static List<MemoryPoolMXBean> retainedHeapPools() {
+        // eden y survivor quedan vacíos después de cada GC; ZGC y Shenandoah tienen un solo pool
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported())
+                .filter(pool -> !pool.getName().contains("Eden") && !pool.getName().contains("Survivor"))
+                .toList();
+    }
+}
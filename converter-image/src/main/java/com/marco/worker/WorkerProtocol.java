@@ -0,0 +1,122 @@
+package com.marco.worker;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Protocolo entre la API y un proceso {@link WorkerMain}, sobre stdin/stdout del worker.
+ * <pre>
+ * request:  int op, UTF format, long maxBytes (-1 = sin límite), boolean progressive,
+ *           long timeoutMillis (-1 = sin deadline), int length, bytes de la imagen
+ * response: 0..n frames [int length &gt; 0, bytes] con la imagen convertida, a medida que se codifica,
+ *           int 0, byte status, UTF message, long heap retenido por el worker después del último GC
+ * </pre>
+ */
+public final class WorkerProtocol {
+
+    public static final int OP_CONVERT = 1;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+    public static final byte STATUS_TOO_LARGE = 2;
+    public static final byte STATUS_CANCELLED = 3;
+
+    public record Request(String targetFormat, Long maxBytes, boolean progressive, long timeoutMillis,
+                          byte[] imageData) {
+    }
+
+    public record Result(byte status, String message, long usedHeapBytes) {
+    }
+
+    private WorkerProtocol() {
+    }
+
+    public static void writeRequest(DataOutputStream out, Request request) throws IOException {
+        out.writeInt(OP_CONVERT);
+        out.writeUTF(request.targetFormat());
+        out.writeLong(request.maxBytes() == null ? -1 : request.maxBytes());
+        out.writeBoolean(request.progressive());
+        out.writeLong(request.timeoutMillis());
+        out.writeInt(request.imageData().length);
+        out.write(request.imageData());
+        out.flush();
+    }
+
+    /**
+     * @throws java.io.EOFException si el otro extremo cerró el stream entre requests
+     */
+    public static Request readRequest(DataInputStream in) throws IOException {
+        int op = in.readInt();
+        if (op != OP_CONVERT) {
+            throw new IOException("Unknown worker operation: " + op);
+        }
+        String targetFormat = in.readUTF();
+        long maxBytes = in.readLong();
+        boolean progressive = in.readBoolean();
+        long timeoutMillis = in.readLong();
+        byte[] imageData = new byte[in.readInt()];
+        in.readFully(imageData);
+        return new Request(targetFormat, maxBytes < 0 ? null : maxBytes, progressive, timeoutMillis, imageData);
+    }
+
+    public static void writeChunk(DataOutputStream out, byte[] data, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        out.writeInt(length);
+        out.write(data, offset, length);
+    }
+
+    public static void writeResult(DataOutputStream out, Result result) throws IOException {
+        out.writeInt(0);
+        out.writeByte(result.status());
+        out.writeUTF(result.message() == null ? "" : result.message());
+        out.writeLong(result.usedHeapBytes());
+        out.flush();
+    }
+
+    /**
+     * Copia los frames de datos a {@code target} (con flush por frame) hasta el resultado final.
+     */
+    public static Result readResponse(DataInputStream in, OutputStream target) throws IOException {
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = in.readInt()) > 0) {
+            int remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Worker closed the stream in the middle of a frame");
+                }
+                target.write(buffer, 0, read);
+                remaining -= read;
+            }
+            target.flush();
+        }
+        return new Result(in.readByte(), in.readUTF(), in.readLong());
+    }
+
+    /**
+     * Stream del lado del worker: cada write se envía como un frame de datos.
+     */
+    public static OutputStream chunkOutputStream(DataOutputStream out) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writeChunk(out, b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        };
+    }
+}
@@ -0,0 +1,248 @@
+package com.marco.service;
+
+import com.marco.exception.ConversionCancelledException;
+import com.marco.exception.ConversionRejectedException;
+import com.marco.exception.ReadFileException;
+import com.marco.util.ConversionControl;
+import com.marco.util.ConversionMetrics;
+import com.marco.util.ImageUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ConversionSchedulerTest {
+
+    private final ImageUtil imgUtil = mock(ImageUtil.class);
+    private final ConversionMetrics metrics = mock(ConversionMetrics.class);
+    // umbral de 100 px, un lane de un thread sin cola extra para cada tamaño
+    private final ConversionScheduler scheduler = new ConversionScheduler(imgUtil, metrics, 100, 1, 1, 1, 1);
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void classify_byPixelCount() throws IOException {
+        when(imgUtil.getImageDimensions(any(InputStream.class)))
+                .thenReturn(new Dimension(10, 9), new Dimension(10, 10));
+
+        assertEquals(ConversionScheduler.Lane.SMALL, scheduler.classify(new byte[0]));
+        assertEquals(ConversionScheduler.Lane.LARGE, scheduler.classify(new byte[0]));
+    }
+
+    @Test
+    void classify_unreadableHeader_goesToSmallLane() throws IOException {
+        when(imgUtil.getImageDimensions(any(InputStream.class))).thenThrow(new IOException("Unsupported image format"));
+
+        assertEquals(ConversionScheduler.Lane.SMALL, scheduler.classify(new byte[0]));
+    }
+
+    @Test
+    void execute_runsTaskOnLaneThreadAndRecordsQueueWait() throws Exception {
+        when(imgUtil.getImageDimensions(any(InputStream.class))).thenReturn(new Dimension(1000, 1000));
+        AtomicReference<String> threadName = new AtomicReference<>();
+
+        scheduler.execute(new byte[0], ConversionControl.unbounded(),
+                () -> threadName.set(Thread.currentThread().getName()));
+
+        assertTrue(threadName.get().startsWith("lane-large-"), "Large images must run on the large lane.");
+        verify(metrics).queueWait(eq("large"), anyLong());
+    }
+
+    @Test
+    void execute_propagatesTaskException() throws IOException {
+        when(imgUtil.getImageDimensions(any(InputStream.class))).thenReturn(new Dimension(1, 1));
+
+        ReadFileException thrown = assertThrows(ReadFileException.class,
+                () -> scheduler.execute(new byte[0], ConversionControl.unbounded(), () -> {
+                    throw new ReadFileException("Invalid file for image conversion");
+                }));
+
+        assertEquals("Invalid file for image conversion", thrown.getMessage());
+    }
+
+    @Test
+    void execute_fullLane_throwsConversionRejectedException() throws Exception {
+        when(imgUtil.getImageDimensions(any(InputStream.class))).thenReturn(new Dimension(1, 1));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        Thread busy = new Thread(() -> {
+            try {
+                scheduler.execute(new byte[0], ConversionControl.unbounded(), () -> {
+                    running.countDown();
+                    awaitQuietly(release);
+                });
+            } catch (Exception ignored) {
+            }
+        });
+        Thread queued = new Thread(() -> {
+            try {
+                scheduler.execute(new byte[0], ConversionControl.unbounded(), () -> {
+                });
+            } catch (Exception ignored) {
+            }
+        });
+        busy.start();
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        queued.start();
+        // se espera a que la segunda tarea ocupe el unico lugar de la cola
+        waitUntil(() -> queued.getState() == Thread.State.WAITING);
+
+        assertThrows(ConversionRejectedException.class,
+                () -> scheduler.execute(new byte[0], ConversionControl.unbounded(), () -> {
+                }));
+        verify(metrics).rejected("small");
+
+        release.countDown();
+        busy.join(5000);
+        queued.join(5000);
+    }
+
+    @Test
+    void execute_deadlineWhileQueued_throwsConversionCancelledException() throws Exception {
+        when(imgUtil.getImageDimensions(any(InputStream.class))).thenReturn(new Dimension(1, 1));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        Thread busy = new Thread(() -> {
+            try {
+                scheduler.execute(new byte[0], ConversionControl.unbounded(), () -> {
+                    running.countDown();
+                    awaitQuietly(release);
+                });
+            } catch (Exception ignored) {
+            }
+        });
+        busy.start();
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        try (ConversionControl control = ConversionControl.withTimeout(Duration.ofMillis(50))) {
+            assertThrows(ConversionCancelledException.class,
+                    () -> scheduler.execute(new byte[0], control, control::checkpoint));
+            assertEquals(ConversionControl.Reason.DEADLINE, control.getReason());
+        }
+
+        release.countDown();
+        busy.join(5000);
+    }
+
+    @Test
+    void execute_deadlineWhileQueued_freesQueueSlot() throws Exception {
+        when(imgUtil.getImageDimensions(any(InputStream.class))).thenReturn(new Dimension(1, 1));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        ConversionScheduler.Submission busy = scheduler.submit(new byte[0], ConversionControl.unbounded(), () -> {
+            running.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        AtomicInteger expiredRuns = new AtomicInteger();
+
+        try (ConversionControl control = ConversionControl.withTimeout(Duration.ofMillis(50))) {
+            assertThrows(ConversionCancelledException.class,
+                    () -> scheduler.execute(new byte[0], control, expiredRuns::incrementAndGet));
+        }
+
+        // el lane sigue ocupado, pero el unico lugar de la cola ya no lo tiene la tarea vencida
+        ConversionScheduler.Submission live = scheduler.submit(new byte[0], ConversionControl.unbounded(), () -> {
+        });
+        verify(metrics).cancelled(ConversionControl.Reason.DEADLINE);
+        release.countDown();
+        busy.await();
+        live.await();
+        assertEquals(0, expiredRuns.get());
+    }
+
+    @Test
+    void submit_interruptedWhileWaiting_cancelsWithAborted() throws Exception {
+        when(imgUtil.getImageDimensions(any(InputStream.class))).thenReturn(new Dimension(1, 1));
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ConversionControl control = ConversionControl.unbounded()) {
+            ConversionScheduler.Submission submission =
+                    scheduler.submit(new byte[0], control, () -> awaitQuietly(release));
+            Thread.currentThread().interrupt();
+
+            assertThrows(ConversionCancelledException.class, submission::await);
+
+            // un interrupt del lado del servidor no es una desconexion del cliente
+            assertTrue(Thread.interrupted());
+            assertEquals(ConversionControl.Reason.ABORTED, control.getReason());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void submit_awaitStart_returnsWhileTaskIsRunning() throws Exception {
+        when(imgUtil.getImageDimensions(any(InputStream.class))).thenReturn(new Dimension(1, 1));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<String> threadName = new AtomicReference<>();
+
+        try (ConversionControl control = ConversionControl.unbounded()) {
+            ConversionScheduler.Submission submission = scheduler.submit(new byte[0], control, () -> {
+                threadName.set(Thread.currentThread().getName());
+                awaitQuietly(release);
+            });
+            submission.awaitStart();
+            // ya salio de la cola pero sigue corriendo
+            waitUntil(() -> threadName.get() != null);
+            assertTrue(threadName.get().startsWith("lane-small-"));
+
+            release.countDown();
+            submission.await();
+        }
+    }
+
+    @Test
+    void submit_awaitStart_deadlineWhileQueued_throwsConversionCancelledException() throws Exception {
+        when(imgUtil.getImageDimensions(any(InputStream.class))).thenReturn(new Dimension(1, 1));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        ConversionScheduler.Submission busy = scheduler.submit(new byte[0], ConversionControl.unbounded(), () -> {
+            running.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        try (ConversionControl control = ConversionControl.withTimeout(Duration.ofMillis(50))) {
+            ConversionScheduler.Submission queued = scheduler.submit(new byte[0], control, control::checkpoint);
+
+            assertThrows(ConversionCancelledException.class, queued::awaitStart);
+            assertEquals(ConversionControl.Reason.DEADLINE, control.getReason());
+        }
+
+        release.countDown();
+        busy.await();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
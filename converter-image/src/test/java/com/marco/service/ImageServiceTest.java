@@ -1,17 +1,24 @@
 package com.marco.service;
 
+import com.marco.exception.ConvertException;
+import com.marco.exception.ReadFileException;
+import com.marco.model.ImageInfo;
 import com.marco.util.ImageUtil;
-import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import java.util.Arrays;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -22,18 +29,15 @@ public class ImageServiceTest {
     private ImageUtil imgUtil;
     // getWriteableFormats()
     @Test
-    void testGetWriteableFormats_returnsLowercaseAndUniqueFormats() {
-        Set<String> mockFormats = new HashSet<>(Arrays.asList("PNG", "JPEG", "Gif", "png"));
-        when(imgUtil.getWriteableFormats()).thenReturn(mockFormats);
+    void testGetWriteableFormats_returnsPrecomputedSet() {
+        Set<String> formats = Set.of("png", "jpeg", "jpg", "gif");
+        when(imgUtil.getWriteableFormats()).thenReturn(formats);
 
-        Set<String> result = imgService.getWriteableFormats();
-
-        Set<String> expectedFormats = new HashSet<>(Arrays.asList("png", "jpeg", "gif"));
-        assertEquals(expectedFormats.size(), result.size(), "Result set should have the correct number of unique elements.");
-        assertTrue(result.containsAll(expectedFormats), "Result set should contain all expected lowercase formats.");
-        assertTrue(expectedFormats.containsAll(result), "Result set should not contain unexpected formats.");
+        // los nombres ya vienen normalizados del FormatIndex: no se arma un set nuevo por llamada
+        assertSame(formats, imgService.getWriteableFormats());
+        assertSame(formats, imgService.getWriteableFormats());
 
-        verify(imgUtil, times(1)).getWriteableFormats();
+        verify(imgUtil, times(2)).getWriteableFormats();
     }
     @Test
     public void testGetWriteableFormats_emptySet() {
@@ -45,30 +49,17 @@ public class ImageServiceTest {
         verify(imgUtil, times(1)).getWriteableFormats();
     }
 
-    @Test
-    public void testGetWriteableFormats_nullValueFromMock() {
-        when(imgUtil.getWriteableFormats()).thenReturn(null);
-
-        Assertions.assertThrows(NullPointerException.class, () -> {
-            imgService.getWriteableFormats();
-        }, "NullPointerException should be thrown if getWriteableFormats returns null.");
-
-        verify(imgUtil, times(1)).getWriteableFormats();
-    }
     //getReadableFormats()
     @Test
-    void testGetReadableFormats_returnsLowercaseAndUniqueFormats() {
-        Set<String> mockFormats = new HashSet<>(Arrays.asList("PNG", "JPEG", "Gif", "png"));
-        when(imgUtil.getReadableFormats()).thenReturn(mockFormats);
+    void testGetReadableFormats_returnsPrecomputedSet() {
+        Set<String> formats = Set.of("png", "jpeg", "jpg", "gif");
+        when(imgUtil.getReadableFormats()).thenReturn(formats);
 
-        Set<String> result = imgService.getReadableFormats();
-
-        Set<String> expectedFormats = new HashSet<>(Arrays.asList("png", "jpeg", "gif"));
-        assertEquals(expectedFormats.size(), result.size(), "Result set should have the correct number of unique elements.");
-        assertTrue(result.containsAll(expectedFormats), "Result set should contain all expected lowercase formats.");
-        assertTrue(expectedFormats.containsAll(result), "Result set should not contain unexpected formats.");
+        // los nombres ya vienen normalizados del FormatIndex: no se arma un set nuevo por llamada
+        assertSame(formats, imgService.getReadableFormats());
+        assertSame(formats, imgService.getReadableFormats());
 
-        verify(imgUtil, times(1)).getReadableFormats();
+        verify(imgUtil, times(2)).getReadableFormats();
     }
     @Test
     public void testGetReadableFormats_emptySet() {
@@ -80,14 +71,67 @@ public class ImageServiceTest {
         verify(imgUtil, times(1)).getReadableFormats();
     }
 
+    //getInfo()
     @Test
-    public void testGetReadableFormats_nullValueFromMock() {
-        when(imgUtil.getReadableFormats()).thenReturn(null);
+    void testGetInfo_returnsInfoFromUtil() throws IOException, ConvertException {
+        InputStream input = new ByteArrayInputStream(new byte[0]);
+        ImageInfo expected = new ImageInfo("png", "image/png", 10, 20, 1, "rgb", 32, true, List.of());
+        when(imgUtil.readImageInfo(input)).thenReturn(expected);
 
-        Assertions.assertThrows(NullPointerException.class, () -> {
-            imgService.getReadableFormats();
-        }, "NullPointerException should be thrown if getReadableFormats returns null.");
+        assertSame(expected, imgService.getInfo(input));
+    }
 
-        verify(imgUtil, times(1)).getReadableFormats();
+    @Test
+    void testGetInfo_unreadableHeader_throwsReadFileException() throws IOException {
+        InputStream input = new ByteArrayInputStream(new byte[0]);
+        when(imgUtil.readImageInfo(input)).thenThrow(new IOException("Unsupported image format"));
+
+        ReadFileException thrown = assertThrows(ReadFileException.class, () -> imgService.getInfo(input));
+
+        assertEquals("Error reading image header: Unsupported image format", thrown.getMessage());
+    }
+
+    //validate()
+    @Test
+    void testValidate_checksTheFormatOfTheWholeData() throws IOException, ConvertException {
+        byte[] imageData = new byte[0];
+        when(imgUtil.getImageFormat(any(InputStream.class))).thenReturn("tif");
+
+        imgService.validate(imageData, "png");
+
+        // no pasa por el header acotado de /info: el archivo ya esta entero en memoria
+        verify(imgUtil).validateWriteableFormat("png");
+        verify(imgUtil).validateReadableFormat("tif");
+        verify(imgUtil, never()).readImageInfo(any());
+    }
+
+    @Test
+    void testValidate_noReader_throwsReadFileException() throws IOException {
+        when(imgUtil.getImageFormat(any(InputStream.class))).thenThrow(new IOException("Unsupported image format"));
+
+        ReadFileException thrown = assertThrows(ReadFileException.class,
+                () -> imgService.validate(new byte[0], "png"));
+
+        assertEquals("Invalid file for image conversion: Unsupported image format", thrown.getMessage());
+    }
+
+    //convert()
+    @Test
+    void testConvert_failure_wrapsCauseWithoutPrintingIt() throws Exception {
+        IOException cause = new IOException("Unsupported image format");
+        when(imgUtil.getImageFormat(any(InputStream.class))).thenThrow(cause);
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(printed));
+        try {
+            ConvertException thrown = assertThrows(ConvertException.class, () -> imgService.convert(
+                    new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), "png"));
+
+            assertEquals("Error during image conversion", thrown.getMessage());
+            assertSame(cause, thrown.getCause());
+        } finally {
+            System.setErr(stderr);
+        }
+        assertEquals("", printed.toString());
     }
 }
@@ -0,0 +1,93 @@
+package com.marco.util;
+
+import com.marco.exception.ConversionCancelledException;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageWriter;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CancellingOutputStreamTest {
+
+    @Test
+    void write_failingOutput_cancelsWithDisconnectAndAbortsWriter() {
+        ImageWriter writer = mock(ImageWriter.class);
+        try (ConversionControl control = ConversionControl.unbounded()) {
+            control.onCancel(writer::abort);
+            OutputStream output = new CancellingOutputStream(new BrokenPipeOutputStream(0), control);
+
+            IOException thrown = assertThrows(IOException.class, () -> output.write(new byte[16], 0, 16));
+
+            assertEquals("Broken pipe", thrown.getMessage());
+            assertEquals(ConversionControl.Reason.DISCONNECT, control.getReason());
+            verify(writer).abort();
+        }
+    }
+
+    @Test
+    void flush_failingOutput_cancelsWithDisconnect() {
+        try (ConversionControl control = ConversionControl.unbounded()) {
+            OutputStream output = new CancellingOutputStream(new BrokenPipeOutputStream(0), control);
+
+            assertThrows(IOException.class, output::flush);
+
+            assertEquals(ConversionControl.Reason.DISCONNECT, control.getReason());
+        }
+    }
+
+    @Test
+    void writeImageProgressive_clientDisconnects_conversionIsCancelled() {
+        BufferedImage image = new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        try (ConversionControl control = ConversionControl.unbounded()) {
+            // el cliente se va despues de recibir los primeros chunks
+            OutputStream output = new CancellingOutputStream(new BrokenPipeOutputStream(32 * 1024), control);
+
+            ConversionCancelledException thrown = assertThrows(ConversionCancelledException.class,
+                    () -> new ImageUtil().writeImageProgressive(image, "jpeg", output, control));
+
+            assertEquals("Conversion cancelled: disconnect", thrown.getMessage());
+        }
+    }
+
+    /**
+     * Acepta {@code capacity} bytes y despues falla como un socket cerrado por el cliente.
+     */
+    private static class BrokenPipeOutputStream extends OutputStream {
+        private long remaining;
+
+        BrokenPipeOutputStream(long capacity) {
+            this.remaining = capacity;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > remaining) {
+                throw new IOException("Broken pipe");
+            }
+            remaining -= len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (remaining <= 0) {
+                throw new IOException("Broken pipe");
+            }
+        }
+    }
+}
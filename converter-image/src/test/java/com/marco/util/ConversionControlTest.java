@@ -0,0 +1,119 @@
+package com.marco.util;
+
+import com.marco.exception.ConversionCancelledException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversionControlTest {
+
+    @Test
+    void unbounded_neverExpires() {
+        try (ConversionControl control = ConversionControl.unbounded()) {
+            assertFalse(control.hasDeadline());
+            assertEquals(Long.MAX_VALUE, control.remainingNanos());
+            assertDoesNotThrow(control::checkpoint);
+        }
+    }
+
+    @Test
+    void cancel_runsRegisteredAbortsAndFailsCheckpoint() {
+        try (ConversionControl control = ConversionControl.unbounded()) {
+            AtomicInteger aborts = new AtomicInteger();
+            control.onCancel(aborts::incrementAndGet);
+
+            assertTrue(control.cancel(ConversionControl.Reason.DISCONNECT));
+            // una segunda cancelacion no vuelve a abortar
+            assertFalse(control.cancel(ConversionControl.Reason.DEADLINE));
+
+            assertEquals(1, aborts.get());
+            assertEquals(ConversionControl.Reason.DISCONNECT, control.getReason());
+            ConversionCancelledException thrown = assertThrows(ConversionCancelledException.class, control::checkpoint);
+            assertEquals("Conversion cancelled: disconnect", thrown.getMessage());
+        }
+    }
+
+    @Test
+    void onCancel_afterCancelling_abortsImmediately() {
+        try (ConversionControl control = ConversionControl.unbounded()) {
+            control.cancel(ConversionControl.Reason.DEADLINE);
+            AtomicInteger aborts = new AtomicInteger();
+
+            control.onCancel(aborts::incrementAndGet);
+
+            assertEquals(1, aborts.get());
+        }
+    }
+
+    @Test
+    void closedRegistration_isNotAborted() {
+        try (ConversionControl control = ConversionControl.unbounded()) {
+            AtomicInteger aborts = new AtomicInteger();
+            control.onCancel(aborts::incrementAndGet).close();
+
+            control.cancel(ConversionControl.Reason.DEADLINE);
+
+            assertEquals(0, aborts.get());
+        }
+    }
+
+    @Test
+    void child_isCancelledWithParentButNotTheOtherWay() {
+        try (ConversionControl parent = ConversionControl.unbounded()) {
+            ConversionControl aborted = parent.child();
+            AtomicInteger abortedActions = new AtomicInteger();
+            aborted.onCancel(abortedActions::incrementAndGet);
+
+            aborted.cancel(ConversionControl.Reason.ABORTED);
+
+            assertEquals(1, abortedActions.get());
+            assertFalse(parent.isCancelled());
+
+            ConversionControl child = parent.child();
+            AtomicInteger childActions = new AtomicInteger();
+            child.onCancel(childActions::incrementAndGet);
+
+            parent.cancel(ConversionControl.Reason.DISCONNECT);
+
+            assertEquals(1, childActions.get());
+            assertEquals(ConversionControl.Reason.DISCONNECT, child.getReason());
+            // el hijo ya cancelado conserva su propio motivo
+            assertEquals(ConversionControl.Reason.ABORTED, aborted.getReason());
+        }
+    }
+
+    @Test
+    void child_closed_isNotCancelledByParent() {
+        try (ConversionControl parent = ConversionControl.withTimeout(Duration.ofMinutes(1))) {
+            ConversionControl child = parent.child();
+            assertTrue(child.hasDeadline());
+
+            child.close();
+            parent.cancel(ConversionControl.Reason.DEADLINE);
+
+            assertFalse(child.isCancelled());
+        }
+    }
+
+    @Test
+    void withTimeout_abortsFromTimerWhenDeadlinePasses() throws InterruptedException {
+        try (ConversionControl control = ConversionControl.withTimeout(Duration.ofMillis(20))) {
+            CountDownLatch aborted = new CountDownLatch(1);
+            control.onCancel(aborted::countDown);
+
+            assertTrue(aborted.await(5, TimeUnit.SECONDS), "The deadline timer must abort the registered action.");
+            assertEquals(ConversionControl.Reason.DEADLINE, control.getReason());
+            assertThrows(ConversionCancelledException.class, control::checkpoint);
+        }
+    }
+
+    @Test
+    void withTimeout_negativeTimeout_throwsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> ConversionControl.withTimeout(Duration.ofMillis(-1)));
+    }
+}
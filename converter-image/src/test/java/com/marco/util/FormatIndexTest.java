@@ -0,0 +1,73 @@
+package com.marco.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FormatIndexTest {
+
+    private final FormatIndex index = new FormatIndex();
+
+    @Test
+    void find_byNameAliasSuffixOrMimeType_returnsSameFormat() {
+        FormatIndex.Format jpeg = index.find("JPEG").orElseThrow();
+
+        assertSame(jpeg, index.find("jpg").orElseThrow());
+        assertSame(jpeg, index.find("image/jpeg").orElseThrow());
+        assertEquals("jpeg", jpeg.name());
+        assertEquals("image/jpeg", jpeg.mimeType());
+        assertTrue(jpeg.readable());
+        assertTrue(jpeg.writeable());
+    }
+
+    @Test
+    void find_capabilities_fromWriter() {
+        FormatIndex.Format png = index.find("png").orElseThrow();
+        FormatIndex.Format jpeg = index.find("jpeg").orElseThrow();
+        FormatIndex.Format gif = index.find("gif").orElseThrow();
+
+        assertTrue(png.alpha());
+        assertFalse(jpeg.alpha());
+        assertTrue(jpeg.progressive());
+        assertTrue(jpeg.compressible());
+        assertTrue(gif.multiFrame());
+        assertFalse(png.multiFrame());
+    }
+
+    @Test
+    void find_losslessCompression_onlyJpegIsLossy() {
+        assertTrue(index.find("jpeg").orElseThrow().lossyCompression());
+        for (String lossless : List.of("png", "gif", "bmp")) {
+            FormatIndex.Format format = index.find(lossless).orElseThrow();
+            assertTrue(format.compressible(), lossless);
+            assertTrue(format.losslessCompression(), lossless);
+            assertFalse(format.lossyCompression(), lossless);
+        }
+    }
+
+    @Test
+    void find_unknownOrNull_returnsEmpty() {
+        assertTrue(index.find("xyz").isEmpty());
+        assertTrue(index.find("image/webp-unknown").isEmpty());
+        assertTrue(index.find(null).isEmpty());
+        assertTrue(index.findWriteable(null).isEmpty());
+    }
+
+    @Test
+    void formatSets_areNormalizedAndImmutable() {
+        Set<String> expectedReadable = Arrays.stream(ImageIO.getReaderFormatNames())
+                .map(name -> name.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+
+        assertEquals(expectedReadable, index.getReadableFormats());
+        assertSame(index.getWriteableFormats(), index.getWriteableFormats());
+        assertThrows(UnsupportedOperationException.class, () -> index.getWriteableFormats().add("xyz"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.marco.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImagePoolTest {
+
+    @Test
+    void release_thenPollSameKey_reusesImage() {
+        ImagePool pool = new ImagePool(2, DataSize.ofMegabytes(1));
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+
+        pool.release(image);
+
+        assertEquals(400, pool.getPooledBytes());
+        assertSame(image, pool.poll(10, 10, BufferedImage.TYPE_INT_RGB));
+        assertEquals(0, pool.getPooledBytes());
+        assertNull(pool.poll(10, 10, BufferedImage.TYPE_INT_RGB), "A pooled image must be handed out only once.");
+    }
+
+    @Test
+    void poll_differentKey_returnsNull() {
+        ImagePool pool = new ImagePool(2, DataSize.ofMegabytes(1));
+        pool.release(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+
+        assertNull(pool.poll(10, 11, BufferedImage.TYPE_INT_RGB));
+        assertNull(pool.poll(10, 10, BufferedImage.TYPE_INT_ARGB));
+    }
+
+    @Test
+    void acquire_emptyPool_allocatesNewImage() {
+        ImagePool pool = new ImagePool(2, DataSize.ofMegabytes(1));
+
+        BufferedImage image = pool.acquire(8, 4, BufferedImage.TYPE_3BYTE_BGR);
+
+        assertEquals(8, image.getWidth());
+        assertEquals(4, image.getHeight());
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, image.getType());
+    }
+
+    @Test
+    void release_respectsPerKeyAndByteLimits() {
+        ImagePool perKey = new ImagePool(1, DataSize.ofMegabytes(1));
+        perKey.release(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        perKey.release(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        assertEquals(400, perKey.getPooledBytes());
+
+        ImagePool bytes = new ImagePool(4, DataSize.ofBytes(500));
+        bytes.release(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        bytes.release(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        assertEquals(400, bytes.getPooledBytes());
+    }
+
+    @Test
+    void clear_resetsEverySample() {
+        BufferedImage image = new BufferedImage(6, 4, BufferedImage.TYPE_4BYTE_ABGR);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 6; x++) {
+                image.setRGB(x, y, 0xFFFFFFFF);
+            }
+        }
+
+        ImagePool.clear(image);
+
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 6; x++) {
+                assertEquals(0, image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    void release_indexedImage_isNotPooled() {
+        ImagePool pool = new ImagePool(2, DataSize.ofMegabytes(1));
+        IndexColorModel palette = new IndexColorModel(1, 2, new byte[]{0, -1}, new byte[]{0, -1}, new byte[]{0, -1});
+
+        pool.release(new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_INDEXED, palette));
+
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    void disabled_neverRetains() {
+        ImagePool pool = ImagePool.disabled();
+
+        pool.release(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+
+        assertNull(pool.poll(10, 10, BufferedImage.TYPE_INT_RGB));
+    }
+}
@@ -1,29 +1,42 @@
 package com.marco.util;
 
+import com.marco.exception.OutputTooLargeException;
 import com.marco.exception.ReadFileException;
 import com.marco.exception.WriteFileException;
+import com.marco.model.ImageInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
 
 import javax.imageio.*;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 
@@ -31,7 +44,9 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 public class ImageUtilTest {
 
-    @InjectMocks
+    // primera ronda de la búsqueda de calidad: de 0 a 1 en 8 pasos
+    private static final int QUALITY_SEARCH_CANDIDATES = 9;
+
     private ImageUtil imageUtil;
 
     @Mock
@@ -51,6 +66,12 @@ public class ImageUtilTest {
         assertDoesNotThrow(() -> imageUtil.validateReadableFormat(readableFormat));
     }
     @Test
+    void validateReadableFormat_mixedCaseOrAlias_noExceptionThrown() {
+        // el formato que devuelve getImageFormat para un JPEG es "JPEG"
+        assertDoesNotThrow(() -> imageUtil.validateReadableFormat("JPEG"));
+        assertDoesNotThrow(() -> imageUtil.validateReadableFormat("Jpg"));
+    }
+    @Test
     void validateReadableFormat_unsupportedFormat_throwsReadFileException() {
         String unsupportedFormat = "xyz";
 
@@ -95,6 +116,11 @@ public class ImageUtilTest {
         assertDoesNotThrow(() -> imageUtil.validateWriteableFormat(readableFormat));
     }
     @Test
+    void validateWriteableFormat_mixedCase_noExceptionThrown() {
+        assertDoesNotThrow(() -> imageUtil.validateWriteableFormat("PNG"));
+        assertDoesNotThrow(() -> imageUtil.validateWriteableFormat(" Jpeg "));
+    }
+    @Test
     void validateWriteableFormat_unsupportedFormat_throwsWriteFileException() {
         String unsupportedFormat = "xyz";
 
@@ -180,6 +206,37 @@ public class ImageUtilTest {
             });
         }
     }
+    @Test
+    void readImage_pooledDestination_isClearedBeforeReading() throws Exception {
+        ImagePool pool = new ImagePool(1, DataSize.ofMegabytes(1));
+        BufferedImage dirty = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        ImagePool.clear(dirty);
+        dirty.setRGB(3, 3, 0xFFFFFF);
+        pool.release(dirty);
+        ImageUtil pooledImageUtil = new ImageUtil(pool);
+        // un reader que no escribe ningun pixel de la imagen destino (ej. lectura parcial de un plugin)
+        ImageReader reader = mock(ImageReader.class);
+        when(reader.getWidth(0)).thenReturn(4);
+        when(reader.getHeight(0)).thenReturn(4);
+        when(reader.getImageTypes(0)).thenReturn(List.of(
+                ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB)).iterator());
+        when(reader.getDefaultReadParam()).thenReturn(new ImageReadParam());
+        when(reader.read(eq(0), any(ImageReadParam.class)))
+                .thenAnswer(invocation -> invocation.getArgument(1, ImageReadParam.class).getDestination());
+
+        try (MockedStatic<ImageIO> mockedImageIO = mockStatic(ImageIO.class)) {
+            mockedImageIO.when(() -> ImageIO.createImageInputStream(any(InputStream.class)))
+                    .thenReturn(mock(ImageInputStream.class));
+            mockedImageIO.when(() -> ImageIO.getImageReaders(any(ImageInputStream.class)))
+                    .thenReturn(List.of(reader).iterator());
+
+            BufferedImage image = pooledImageUtil.readImage(new ByteArrayInputStream(new byte[0]),
+                    ConversionControl.unbounded());
+
+            assertSame(dirty, image);
+            assertEquals(0, image.getRGB(3, 3) & 0xFFFFFF, "The previous content of a pooled image must not leak.");
+        }
+    }
     //getImageWritter()**
 
     @Test
@@ -420,4 +477,361 @@ public class ImageUtilTest {
             mockedStaticImageIO.verifyNoMoreInteractions();
         }
     }
+    // readImageInfo()**
+    @Test
+    void readImageInfo_pngWithAlpha_returnsHeaderData() throws IOException {
+        BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+
+        ImageInfo info = imageUtil.readImageInfo(new ByteArrayInputStream(png.toByteArray()));
+
+        assertEquals("png", info.format());
+        assertEquals("image/png", info.mimeType());
+        assertEquals(40, info.width());
+        assertEquals(30, info.height());
+        assertEquals("rgb", info.colorModel());
+        assertTrue(info.hasAlpha(), "An ARGB png must report an alpha channel.");
+        assertTrue(info.metadataFormats().contains("javax_imageio_png_1.0"));
+    }
+
+    @Test
+    void readImageInfo_jpeg_hasNoAlpha() throws IOException {
+        BufferedImage image = new BufferedImage(16, 8, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", jpeg);
+
+        ImageInfo info = imageUtil.readImageInfo(new ByteArrayInputStream(jpeg.toByteArray()));
+
+        assertEquals(16, info.width());
+        assertEquals(8, info.height());
+        assertFalse(info.hasAlpha());
+    }
+
+    @Test
+    void readImageInfo_largePng_readsOnlyHeaderPrefix() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(noisyImage(1200, 1000), "png", png);
+        CountingInputStream input = new CountingInputStream(new ByteArrayInputStream(png.toByteArray()));
+
+        ImageInfo info = imageUtil.readImageInfo(input);
+
+        assertEquals(1200, info.width());
+        assertEquals(1000, info.height());
+        assertEquals("rgb", info.colorModel());
+        assertTrue(info.metadataFormats().contains("javax_imageio_png_1.0"));
+        // el archivo ocupa megas; se lee el header y se corta en el primer IDAT
+        assertTrue(input.count < 64 * 1024,
+                "Only the header should be read, read " + input.count + " of " + png.size() + " bytes");
+    }
+
+    @Test
+    void readImageInfo_largePalettePng_neverReadsPastLimit() throws IOException {
+        BufferedImage image = new BufferedImage(1200, 1000, BufferedImage.TYPE_BYTE_INDEXED);
+        image.getGraphics().drawImage(noisyImage(1200, 1000), 0, 0, null);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        assertTrue(png.size() > ImageUtil.HEADER_READ_LIMIT);
+        CountingInputStream input = new CountingInputStream(new ByteArrayInputStream(png.toByteArray()));
+
+        ImageInfo info = imageUtil.readImageInfo(input);
+
+        assertEquals(1200, info.width());
+        assertEquals(1000, info.height());
+        // para el color de un PNG con paleta el reader del JDK recorre todo el archivo: queda desconocido
+        assertNull(info.colorModel());
+        assertEquals(-1, info.bitsPerPixel());
+        assertTrue(input.count <= ImageUtil.HEADER_READ_LIMIT,
+                "Read " + input.count + " bytes, limit is " + ImageUtil.HEADER_READ_LIMIT);
+    }
+
+    @Test
+    void readImageInfo_tiffWithIfdAtTheEnd_readsPastLimit() throws IOException {
+        byte[] tiff = tiffWithIfdAtTheEnd(400, 400);
+        assertTrue(tiff.length > ImageUtil.HEADER_READ_LIMIT);
+
+        ImageInfo info = imageUtil.readImageInfo(new ByteArrayInputStream(tiff));
+
+        assertEquals("tif", info.format());
+        assertEquals(400, info.width());
+        assertEquals(400, info.height());
+        assertEquals("rgb", info.colorModel());
+    }
+
+    @Test
+    void readImageInfo_whenNoReadersFound_shouldThrowIOException() {
+        IOException thrown = assertThrows(IOException.class,
+                () -> imageUtil.readImageInfo(new ByteArrayInputStream("not an image".getBytes())));
+
+        assertEquals("Unsupported image format", thrown.getMessage());
+    }
+    // writeImageWithinBytes()**
+    @Test
+    void writeImageWithinBytes_jpeg_fitsInBudgetAndIsReadable() throws Exception {
+        BufferedImage image = noisyImage(200, 150);
+        ByteArrayOutputStream best = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", best);
+        // la mitad de lo que ocupa con la calidad por defecto
+        long maxBytes = best.size() / 2;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            imageUtil.writeImageWithinBytes(image, "jpeg", output, maxBytes, false, executor,
+                    ConversionControl.unbounded());
+
+            assertTrue(output.size() > 0 && output.size() <= maxBytes,
+                    "Output must fit in " + maxBytes + " bytes, got " + output.size());
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(output.toByteArray()));
+            assertEquals(200, decoded.getWidth());
+            assertEquals(150, decoded.getHeight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void writeImageWithinBytes_budgetTooSmall_throwsOutputTooLargeException() {
+        BufferedImage image = noisyImage(64, 64);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            OutputTooLargeException thrown = assertThrows(OutputTooLargeException.class,
+                    () -> imageUtil.writeImageWithinBytes(image, "jpeg", new ByteArrayOutputStream(), 10,
+                            false, executor, ConversionControl.unbounded()));
+
+            assertEquals("Image cannot be written as jpeg within 10 bytes", thrown.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void writeImageWithinBytes_png_encodesOnceAtMaximumCompression() throws Exception {
+        ImageUtil spyImageUtil = spy(imageUtil);
+        BufferedImage image = noisyImage(64, 64);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            spyImageUtil.writeImageWithinBytes(image, "png", output, 1024 * 1024, false, executor,
+                    ConversionControl.unbounded());
+
+            // PNG no pierde calidad: no hay nada que buscar
+            verify(spyImageUtil, times(1)).encode(any(), any(), any(), anyBoolean(), any());
+            verify(spyImageUtil).encode(any(), eq("png"), eq(0f), eq(false), any());
+            assertNotNull(ImageIO.read(new ByteArrayInputStream(output.toByteArray())));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void writeImageWithinBytes_candidateFails_abortsRunningCandidates() throws Exception {
+        ImageUtil spyImageUtil = spy(imageUtil);
+        CountDownLatch aborted = new CountDownLatch(QUALITY_SEARCH_CANDIDATES - 1);
+        doAnswer(invocation -> {
+            Float quality = invocation.getArgument(2);
+            ConversionControl control = invocation.getArgument(4);
+            if (quality == 0f) {
+                throw new WriteFileException("Error writing image: broken writer");
+            }
+            // un writer lento que solo termina si lo abortan
+            long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!control.isCancelled() && System.nanoTime() < giveUp) {
+                Thread.sleep(5);
+            }
+            if (control.isCancelled()) {
+                aborted.countDown();
+            }
+            control.checkpoint();
+            return new byte[0];
+        }).when(spyImageUtil).encode(any(), eq("jpeg"), any(), anyBoolean(), any());
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (ConversionControl control = ConversionControl.unbounded()) {
+            WriteFileException thrown = assertThrows(WriteFileException.class,
+                    () -> spyImageUtil.writeImageWithinBytes(noisyImage(32, 32), "jpeg",
+                            new ByteArrayOutputStream(), 1024, false, executor, control));
+
+            assertEquals("Error writing image: broken writer", thrown.getMessage());
+            assertTrue(aborted.await(5, TimeUnit.SECONDS), "Every other candidate must be aborted.");
+            // la conversion en si no queda cancelada
+            assertFalse(control.isCancelled());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void writeImageWithinBytes_candidateFails_releasesImageAfterEveryCandidateFinished() throws Exception {
+        ImagePool pool = spy(ImagePool.disabled());
+        ImageUtil spyImageUtil = spy(new ImageUtil(pool));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        AtomicInteger runningAtRelease = new AtomicInteger(-1);
+        doAnswer(invocation -> {
+            runningAtRelease.set(running.get());
+            return null;
+        }).when(pool).release(any());
+        doAnswer(invocation -> {
+            Float quality = invocation.getArgument(2);
+            if (quality == 0f) {
+                throw new WriteFileException("Error writing image: broken writer");
+            }
+            // un writer que no atiende el abort y sigue leyendo la imagen
+            running.incrementAndGet();
+            try {
+                Thread.sleep(100);
+                return new byte[0];
+            } finally {
+                running.decrementAndGet();
+                finished.incrementAndGet();
+            }
+        }).when(spyImageUtil).encode(any(), eq("jpeg"), any(), anyBoolean(), any());
+        // con alfa: la imagen sin alfa es intermedia y vuelve al pool
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertThrows(WriteFileException.class,
+                    () -> spyImageUtil.writeImageWithinBytes(image, "jpeg", new ByteArrayOutputStream(), 1024,
+                            false, executor, ConversionControl.unbounded()));
+
+            assertEquals(QUALITY_SEARCH_CANDIDATES - 1, finished.get());
+            assertEquals(0, runningAtRelease.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // writeImageProgressive()**
+    @Test
+    void writeImageProgressive_jpeg_isProgressive() throws Exception {
+        BufferedImage image = noisyImage(512, 512);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        imageUtil.writeImageProgressive(image, "jpeg", output, ConversionControl.unbounded());
+
+        byte[] jpeg = output.toByteArray();
+        // SOF2 = JPEG progresivo
+        assertTrue(containsMarker(jpeg, (byte) 0xC2), "The JPEG must be progressive.");
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertEquals(512, decoded.getWidth());
+        assertEquals(512, decoded.getHeight());
+    }
+
+    @Test
+    void writeImageProgressive_png_isInterlacedAndSentWhileEncoding() throws Exception {
+        BufferedImage image = noisyImage(1024, 1024);
+        List<long[]> writes = Collections.synchronizedList(new ArrayList<>());
+        ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                super.write(b, off, len);
+                writes.add(new long[]{System.nanoTime(), size()});
+            }
+        };
+
+        long start = System.nanoTime();
+        imageUtil.writeImageProgressive(image, "png", output, ConversionControl.unbounded());
+        long end = System.nanoTime();
+
+        byte[] png = output.toByteArray();
+        // metodo de entrelazado del IHDR: 1 = Adam7
+        assertEquals(1, png[28]);
+        // no solo la cabecera: una decima parte de la imagen ya se envio antes de la mitad de la codificacion
+        long tenthSentAt = writes.stream().filter(write -> write[1] >= png.length / 10)
+                .mapToLong(write -> write[0]).findFirst().orElseThrow();
+        assertTrue(tenthSentAt - start < (end - start) / 2,
+                "A tenth of the output must be sent before half of the encoding, was at "
+                        + (tenthSentAt - start) * 100 / (end - start) + "%");
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(1024, decoded.getWidth());
+    }
+
+    private static boolean containsMarker(byte[] jpeg, byte marker) {
+        for (int i = 0; i < jpeg.length - 1; i++) {
+            if (jpeg[i] == (byte) 0xFF && jpeg[i + 1] == marker) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * TIFF RGB sin compresión con el IFD después de los píxeles, como lo escribe libtiff por defecto.
+     */
+    static byte[] tiffWithIfdAtTheEnd(int width, int height) {
+        int pixelBytes = width * height * 3;
+        int ifdOffset = 8 + pixelBytes;
+        int entries = 9;
+        int bitsPerSampleOffset = ifdOffset + 2 + entries * 12 + 4;
+        ByteBuffer tiff = ByteBuffer.allocate(bitsPerSampleOffset + 6).order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(ifdOffset);
+        tiff.position(ifdOffset);
+        tiff.putShort((short) entries);
+        tiffEntry(tiff, 256, 3, 1, width);
+        tiffEntry(tiff, 257, 3, 1, height);
+        tiffEntry(tiff, 258, 3, 3, bitsPerSampleOffset);
+        tiffEntry(tiff, 259, 3, 1, 1);
+        tiffEntry(tiff, 262, 3, 1, 2);
+        tiffEntry(tiff, 273, 4, 1, 8);
+        tiffEntry(tiff, 277, 3, 1, 3);
+        tiffEntry(tiff, 278, 3, 1, height);
+        tiffEntry(tiff, 279, 4, 1, pixelBytes);
+        tiff.putInt(0);
+        tiff.putShort((short) 8).putShort((short) 8).putShort((short) 8);
+        return tiff.array();
+    }
+
+    private static void tiffEntry(ByteBuffer tiff, int tag, int type, int count, int value) {
+        tiff.putShort((short) tag).putShort((short) type).putInt(count);
+        if (type == 3 && count == 1) {
+            tiff.putShort((short) value).putShort((short) 0);
+        } else {
+            tiff.putInt(value);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static BufferedImage noisyImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
 }
@@ -0,0 +1,104 @@
+package com.marco.worker;
+
+import com.marco.exception.OutputTooLargeException;
+import com.marco.model.ConversionOptions;
+import com.marco.service.ImageService;
+import com.marco.util.ConversionControl;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class WorkerProtocolTest {
+
+    @Test
+    void request_roundTrip() throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        WorkerProtocol.writeRequest(new DataOutputStream(buffer),
+                new WorkerProtocol.Request("jpeg", 2048L, true, 500, new byte[]{1, 2, 3}));
+        WorkerProtocol.writeRequest(new DataOutputStream(buffer),
+                new WorkerProtocol.Request("png", null, false, -1, new byte[0]));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+
+        WorkerProtocol.Request first = WorkerProtocol.readRequest(in);
+        WorkerProtocol.Request second = WorkerProtocol.readRequest(in);
+
+        assertEquals("jpeg", first.targetFormat());
+        assertEquals(2048L, first.maxBytes());
+        assertTrue(first.progressive());
+        assertEquals(500, first.timeoutMillis());
+        assertArrayEquals(new byte[]{1, 2, 3}, first.imageData());
+        assertNull(second.maxBytes());
+        assertEquals(-1, second.timeoutMillis());
+        // el padre cerró stdin: el worker termina
+        assertThrows(EOFException.class, () -> WorkerProtocol.readRequest(in));
+    }
+
+    @Test
+    void handle_streamsOutputFramesThenResult() throws Exception {
+        ImageService imageService = mock(ImageService.class);
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write(new byte[40_000]);
+            out.write(7);
+            return null;
+        }).when(imageService).convert(any(InputStream.class), any(OutputStream.class), eq("png"),
+                any(ConversionOptions.class), any(ConversionControl.class));
+        ByteArrayOutputStream pipe = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(pipe);
+
+        WorkerProtocol.writeResult(out, WorkerMain.handle(imageService,
+                new WorkerProtocol.Request("png", null, false, -1, new byte[0]), out));
+
+        ByteArrayOutputStream converted = new ByteArrayOutputStream();
+        WorkerProtocol.Result result = WorkerProtocol.readResponse(
+                new DataInputStream(new ByteArrayInputStream(pipe.toByteArray())), converted);
+        assertEquals(WorkerProtocol.STATUS_OK, result.status());
+        assertEquals(40_001, converted.size());
+        assertEquals(7, converted.toByteArray()[40_000]);
+        // heap retenido despues del ultimo GC completo: 0 si todavia no hubo ninguno
+        assertTrue(result.usedHeapBytes() >= 0);
+    }
+
+    @Test
+    void retainedHeapBytes_countsWhatSurvivesAFullGc() {
+        byte[] retained = new byte[32 * 1024 * 1024];
+
+        System.gc();
+
+        assertTrue(WorkerMain.retainedHeapBytes() >= retained.length,
+                "The retained heap must include the live array.");
+        // la referencia vive hasta despues de medir
+        assertEquals(0, retained[retained.length - 1]);
+    }
+
+    @Test
+    void handle_outputTooLarge_reportsStatus() throws Exception {
+        ImageService imageService = mock(ImageService.class);
+        doThrow(new OutputTooLargeException("Image cannot be written as jpeg within 10 bytes"))
+                .when(imageService).convert(any(InputStream.class), any(OutputStream.class), eq("jpeg"),
+                        any(ConversionOptions.class), any(ConversionControl.class));
+        ByteArrayOutputStream pipe = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(pipe);
+
+        WorkerProtocol.writeResult(out, WorkerMain.handle(imageService,
+                new WorkerProtocol.Request("jpeg", 10L, false, 1000, new byte[0]), out));
+
+        ByteArrayOutputStream converted = new ByteArrayOutputStream();
+        WorkerProtocol.Result result = WorkerProtocol.readResponse(
+                new DataInputStream(new ByteArrayInputStream(pipe.toByteArray())), converted);
+        assertEquals(WorkerProtocol.STATUS_TOO_LARGE, result.status());
+        assertEquals("Image cannot be written as jpeg within 10 bytes", result.message());
+        assertEquals(0, converted.size());
+    }
+}